@@ -0,0 +1,610 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandler;
+import java.net.http.HttpResponse.BodySubscriber;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Fetches HTML without blocking the calling thread, using an
+ * {@link HttpClient}. A fetch returns at once with a future of the HTML, and the
+ * client completes it when the response arrives, so a few threads can keep
+ * hundreds of requests outstanding. The client speaks HTTP/2 where the server
+ * offers it, which multiplexes the requests to a host over one connection.
+ *
+ * At most a fixed number of requests are in flight at once; further requests
+ * wait in order until one finishes. Each redirect counts as its own request.
+ *
+ * Fetches follow the timeouts of {@link HttpsFetcher}. The client has no limit
+ * on a single read, so the read timeout bounds the wait for the headers of each
+ * request instead, and the whole fetch, redirects included, is cancelled once
+ * the total timeout passes. Without a total timeout nothing stops a body that
+ * keeps trickling in.
+ *
+ * @see HtmlFetcher
+ * @author isaiahjenkins
+ */
+public class AsyncHtmlFetcher {
+
+	/**
+	 * Client that sends the requests
+	 */
+	private final HttpClient client;
+
+	/**
+	 * Threads of the client, kept apart from any work queue so its tasks are not
+	 * counted as work and are never dropped when a queue is shut down
+	 */
+	private final ExecutorService executor;
+
+	/**
+	 * Max number of requests in flight at once
+	 */
+	private final int maxInFlight;
+
+	/**
+	 * Requests waiting for another to finish
+	 */
+	private final ArrayDeque<BooleanSupplier> waiting;
+
+	/**
+	 * Number of requests in flight
+	 */
+	private int inFlight;
+
+	/**
+	 * Most requests in flight at once
+	 */
+	private int peakInFlight;
+
+	/**
+	 * Number of requests sent
+	 */
+	private long requests;
+
+	/**
+	 * Number of requests that failed without a response
+	 */
+	private long failed;
+
+	/**
+	 * Reads the body of successful HTML responses, up to the max body size, and
+	 * skips any other body
+	 */
+	private final BodyHandler<String> html;
+
+	/**
+	 * Constructor for a fetcher that reads at most {@link HttpsFetcher#MAX_BODY}
+	 * bytes of each page.
+	 *
+	 * @param maxInFlight max number of requests in flight at once
+	 * @param threads     number of threads that run the work of the client,
+	 *                    including completing the futures
+	 */
+	public AsyncHtmlFetcher(int maxInFlight, int threads) {
+		this(maxInFlight, threads, HttpsFetcher.MAX_BODY);
+	}
+
+	/**
+	 * Constructor for a fetcher. The connect timeout of {@link HttpsFetcher} at
+	 * this time applies to all its connections.
+	 *
+	 * @param maxInFlight max number of requests in flight at once
+	 * @param threads     number of threads that run the work of the client,
+	 *                    including completing the futures
+	 * @param maxBytes    max number of body bytes to read for each page; the
+	 *                    rest is cut off
+	 */
+	public AsyncHtmlFetcher(int maxInFlight, int threads, int maxBytes) {
+		// daemon threads, so a fetcher that is not shut down does not keep the program running
+		this.executor = Executors.newFixedThreadPool(Math.max(1, threads), task -> {
+			Thread thread = new Thread(task, "async-fetcher");
+			thread.setDaemon(true);
+			return thread;
+		});
+		HttpClient.Builder builder = HttpClient.newBuilder().followRedirects(HttpClient.Redirect.NEVER)
+				.executor(executor);
+		if (HttpsFetcher.getConnectTimeout() > 0) {
+			builder.connectTimeout(Duration.ofMillis(HttpsFetcher.getConnectTimeout()));
+		}
+		this.client = builder.build();
+		this.html = info -> {
+			String type = info.headers().firstValue("Content-Type").orElse("");
+			if (info.statusCode() == 200 && type.toLowerCase().startsWith("text/html")) {
+				Charset charset = HttpsFetcher.getCharset(type);
+				String encoding = info.headers().firstValue("Content-Encoding").orElse(null);
+				return BodySubscribers.mapping(new LimitedBody(maxBytes, encoding), body -> new String(body, charset));
+			}
+			return BodySubscribers.replacing(null);
+		};
+		this.maxInFlight = Math.max(1, maxInFlight);
+		this.waiting = new ArrayDeque<>();
+		this.inFlight = 0;
+		this.peakInFlight = 0;
+		this.requests = 0;
+		this.failed = 0;
+	}
+
+	/**
+	 * Fetches the resource at the url. If the status code is 200 and the content
+	 * type is HTML, the future completes with the HTML. If the status code is a
+	 * valid redirect, follows that redirect if the number of redirects is greater
+	 * than 0. Otherwise, the future completes with {@code null}; it never
+	 * completes exceptionally. A fetch that times out is counted by
+	 * {@link HttpsFetcher#getTimedOut()}.
+	 *
+	 * @param url       the url to fetch
+	 * @param redirects the number of times to follow redirects
+	 * @return future of the html or {@code null} if unable to fetch the resource
+	 *         or the resource is not html
+	 *
+	 * @see HtmlFetcher#fetch(String, int)
+	 */
+	public CompletableFuture<String> fetch(String url, int redirects) {
+		return fetch(url, redirects, HttpsFetcher.newDeadline());
+	}
+
+	/**
+	 * Fetches the resource like {@link #fetch(String, int)}, giving up when the
+	 * deadline passes, however many redirects were followed by then.
+	 *
+	 * @param url       the url to fetch
+	 * @param redirects the number of times to follow redirects
+	 * @param deadline  time by {@link System#nanoTime()} when the whole fetch
+	 *                  must end
+	 * @return future of the html or {@code null} if unable to fetch the resource
+	 *         in time or the resource is not html
+	 */
+	private CompletableFuture<String> fetch(String url, int redirects, long deadline) {
+		URI uri;
+		HttpRequest request;
+		try {
+			uri = URI.create(url);
+			HttpRequest.Builder builder = HttpRequest.newBuilder(uri).header("Accept-Encoding", "gzip, deflate").GET();
+			builder.timeout(Duration.ofMillis(HttpsFetcher.timeout(HttpsFetcher.getReadTimeout(), deadline)));
+			request = builder.build();
+		} catch (IllegalArgumentException e) {
+			return CompletableFuture.completedFuture(null);
+		} catch (SocketTimeoutException e) {
+			HttpsFetcher.countTimeout();
+			return CompletableFuture.completedFuture(null);
+		}
+
+		return send(request, deadline).thenCompose(response -> {
+			int statusCode = response.statusCode();
+			String location = response.headers().firstValue("Location").orElse(null);
+			if (statusCode >= 300 && statusCode <= 399 && location != null && redirects > 0) {
+				return fetch(uri.resolve(location).toString(), redirects - 1, deadline);
+			}
+
+			// same lines as the blocking fetcher
+			String html = response.body();
+			return CompletableFuture
+					.completedFuture(html == null ? null : html.lines().collect(Collectors.joining("\n")));
+		}).exceptionally(e -> {
+			Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+			if (cause instanceof HttpTimeoutException || cause instanceof CancellationException
+					|| cause instanceof TimeoutException) {
+				HttpsFetcher.countTimeout();
+			}
+			return null;
+		});
+	}
+
+	/**
+	 * Sends a request once fewer than the max number of requests are in flight,
+	 * and cancels it if it has not finished by the deadline. A request still
+	 * waiting at the deadline fails without being sent.
+	 *
+	 * @param request  the request
+	 * @param deadline time by {@link System#nanoTime()} when the request must
+	 *                 have finished
+	 * @return future of the response
+	 */
+	private CompletableFuture<HttpResponse<String>> send(HttpRequest request, long deadline) {
+		CompletableFuture<HttpResponse<String>> result = new CompletableFuture<>();
+
+		// true if the request was sent, false if it failed at once
+		BooleanSupplier start = () -> {
+			try {
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
+					throw new CompletionException(new HttpTimeoutException("Fetch deadline passed"));
+				}
+
+				CompletableFuture<HttpResponse<String>> sent = client.sendAsync(request, html);
+				CompletableFuture<HttpResponse<String>> timed = sent;
+				if (HttpsFetcher.getTotalTimeout() > 0) {
+					// the timer is dropped as soon as the response arrives, and when it fires
+					// first, cancelling the exchange closes its connection
+					timed = sent.copy().orTimeout(remaining, TimeUnit.NANOSECONDS);
+				}
+				timed.whenComplete((response, error) -> {
+					if (error instanceof TimeoutException) {
+						sent.cancel(true);
+					}
+					finished(error != null);
+					if (error != null) {
+						result.completeExceptionally(error);
+					} else {
+						result.complete(response);
+					}
+				});
+				return true;
+			} catch (RuntimeException e) {
+				synchronized (this) {
+					failed++;
+				}
+				result.completeExceptionally(e instanceof CompletionException ? e.getCause() : e);
+				return false;
+			}
+		};
+
+		synchronized (this) {
+			requests++;
+			if (inFlight >= maxInFlight) {
+				waiting.addLast(start);
+				return result;
+			}
+			inFlight++;
+			peakInFlight = Math.max(peakInFlight, inFlight);
+		}
+		if (!start.getAsBoolean()) {
+			finished(false);
+		}
+		return result;
+	}
+
+	/**
+	 * Called when a request finished, and starts waiting requests in its place
+	 * until one of them is sent. Waiting requests that fail at once, such as
+	 * those past their deadline, are drained here in a loop, so a long queue of
+	 * them does not grow the stack.
+	 *
+	 * @param error whether the request failed without a response
+	 */
+	private void finished(boolean error) {
+		synchronized (this) {
+			if (error) {
+				failed++;
+			}
+		}
+
+		while (true) {
+			BooleanSupplier next;
+			synchronized (this) {
+				next = waiting.pollFirst();
+				if (next == null) {
+					inFlight--;
+					return;
+				}
+			}
+
+			// the sent request keeps the slot until it finishes
+			if (next.getAsBoolean()) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of requests in flight.
+	 *
+	 * @return number of requests in flight
+	 */
+	public synchronized int getInFlight() {
+		return inFlight;
+	}
+
+	/**
+	 * Returns the most requests that were in flight at once.
+	 *
+	 * @return peak number of requests in flight
+	 */
+	public synchronized int getPeakInFlight() {
+		return peakInFlight;
+	}
+
+	/**
+	 * Returns the number of requests sent, including redirects.
+	 *
+	 * @return number of requests
+	 */
+	public synchronized long getRequests() {
+		return requests;
+	}
+
+	/**
+	 * Returns the number of requests that failed without a response.
+	 *
+	 * @return number of failed requests
+	 */
+	public synchronized long getFailed() {
+		return failed;
+	}
+
+	/**
+	 * Stops the threads of the client once the work they were given is done.
+	 * Fetches must not be started after this.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("async fetcher: %d requests, %d failed, %d in flight (peak %d of %d), %d waiting",
+				requests, failed, inFlight, peakInFlight, maxInFlight, waiting.size());
+	}
+
+	/**
+	 * Decodes the bytes of a body with its content coding as they arrive, and
+	 * collects the decoded bytes until the body ends or they reach a max size,
+	 * then cancels the rest of the body. Like {@link HttpsFetcher}, the cap is on
+	 * the decoded bytes, so a compressed page larger than the cap is cut off
+	 * instead of lost, and a body that ends early keeps what was decoded.
+	 */
+	private static class LimitedBody implements BodySubscriber<byte[]> {
+		/**
+		 * Max number of decoded bytes to collect
+		 */
+		private final int maxBytes;
+
+		/**
+		 * Content coding of the body, lower case
+		 */
+		private final String coding;
+
+		/**
+		 * Decoded bytes collected so far
+		 */
+		private final ByteArrayOutputStream body;
+
+		/**
+		 * Start of a compressed body kept until its header is complete
+		 */
+		private final ByteArrayOutputStream header;
+
+		/**
+		 * Inflates a compressed body once its header was read, or null
+		 */
+		private Inflater inflater;
+
+		/**
+		 * Number of body bytes received, before decoding
+		 */
+		private long received;
+
+		/**
+		 * Completed with the body
+		 */
+		private final CompletableFuture<byte[]> result;
+
+		/**
+		 * Subscription to the body
+		 */
+		private Flow.Subscription subscription;
+
+		/**
+		 * Constructor for an empty body.
+		 *
+		 * @param maxBytes max number of decoded bytes to collect
+		 * @param encoding the value of the "Content-Encoding" header, or null
+		 */
+		public LimitedBody(int maxBytes, String encoding) {
+			this.maxBytes = Math.max(0, maxBytes);
+			this.coding = encoding == null ? "identity" : encoding.trim().toLowerCase();
+			this.body = new ByteArrayOutputStream();
+			this.header = new ByteArrayOutputStream();
+			this.result = new CompletableFuture<>();
+		}
+
+		@Override
+		public CompletionStage<byte[]> getBody() {
+			return result;
+		}
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+			if (!coding.isEmpty() && !coding.equals("identity") && !coding.equals("gzip")
+					&& !coding.equals("x-gzip") && !coding.equals("deflate")) {
+				subscription.cancel();
+				result.completeExceptionally(new ProtocolException("Unsupported Content-Encoding: " + coding));
+				return;
+			}
+			subscription.request(1);
+		}
+
+		@Override
+		public void onNext(List<ByteBuffer> buffers) {
+			if (result.isDone()) {
+				return;
+			}
+
+			try {
+				for (ByteBuffer buffer : buffers) {
+					byte[] bytes = new byte[buffer.remaining()];
+					buffer.get(bytes);
+					received += bytes.length;
+					decode(bytes);
+
+					if (body.size() >= maxBytes) {
+						subscription.cancel();
+						finish();
+						return;
+					}
+				}
+			} catch (IOException e) {
+				subscription.cancel();
+				end();
+				result.completeExceptionally(e);
+				return;
+			}
+			subscription.request(1);
+		}
+
+		/**
+		 * Decodes the next bytes of the body into the collected bytes.
+		 *
+		 * @param bytes the bytes as sent
+		 * @throws IOException if the body is not in its content coding
+		 */
+		private void decode(byte[] bytes) throws IOException {
+			if (coding.isEmpty() || coding.equals("identity")) {
+				body.write(bytes, 0, Math.min(bytes.length, maxBytes - body.size()));
+				return;
+			}
+
+			if (inflater == null) {
+				header.write(bytes);
+				byte[] start = header.toByteArray();
+				int length = coding.equals("deflate") ? deflateHeader(start) : gzipHeader(start);
+				if (length < 0) {
+					return;
+				}
+				bytes = Arrays.copyOfRange(start, length, start.length);
+			}
+
+			// anything after the end of the compressed data, like the gzip trailer, is
+			// read but not decoded
+			if (inflater.finished()) {
+				return;
+			}
+			inflater.setInput(bytes);
+			byte[] decoded = new byte[8192];
+			try {
+				while (!inflater.finished() && body.size() < maxBytes) {
+					int count = inflater.inflate(decoded, 0, Math.min(decoded.length, maxBytes - body.size()));
+					if (inflater.needsDictionary()) {
+						throw new ZipException("Invalid " + coding + " body: needs a preset dictionary");
+					}
+					if (count == 0 && inflater.needsInput()) {
+						break;
+					}
+					body.write(decoded, 0, count);
+				}
+			} catch (DataFormatException e) {
+				throw new ZipException("Invalid " + coding + " body: " + e.getMessage());
+			}
+		}
+
+		/**
+		 * Starts inflating a deflate body once its first two bytes show whether it
+		 * has the zlib wrapper it is meant to have; some servers send raw deflate.
+		 *
+		 * @param start the bytes of the body so far
+		 * @return number of bytes before the compressed data, or -1 if more bytes
+		 *         are needed
+		 */
+		private int deflateHeader(byte[] start) {
+			if (start.length < 2) {
+				return -1;
+			}
+			boolean zlib = (start[0] & 0x0F) == 8 && (((start[0] & 0xFF) << 8) | (start[1] & 0xFF)) % 31 == 0;
+			inflater = new Inflater(!zlib);
+			return 0;
+		}
+
+		/**
+		 * Starts inflating a gzip body once its header is complete.
+		 *
+		 * @param start the bytes of the body so far
+		 * @return number of header bytes, or -1 if more bytes are needed
+		 * @throws ZipException if the body does not start with a gzip header
+		 */
+		private int gzipHeader(byte[] start) throws ZipException {
+			if (start.length < 10) {
+				return -1;
+			}
+			if ((start[0] & 0xFF) != 0x1F || (start[1] & 0xFF) != 0x8B || start[2] != 8) {
+				throw new ZipException("Not in GZIP format");
+			}
+
+			int flags = start[3];
+			int length = 10;
+			if ((flags & 4) != 0) {
+				if (start.length < length + 2) {
+					return -1;
+				}
+				length += 2 + ((start[length] & 0xFF) | (start[length + 1] & 0xFF) << 8);
+			}
+			// file name and comment end with a zero byte
+			for (int flag : new int[] { 8, 16 }) {
+				if ((flags & flag) != 0) {
+					while (length < start.length && start[length] != 0) {
+						length++;
+					}
+					length++;
+				}
+			}
+			if ((flags & 2) != 0) {
+				length += 2;
+			}
+			if (length > start.length) {
+				return -1;
+			}
+
+			inflater = new Inflater(true);
+			return length;
+		}
+
+		/**
+		 * Completes the body with the bytes decoded so far and counts them.
+		 */
+		private void finish() {
+			end();
+			byte[] content = body.toByteArray();
+			HttpsFetcher.countTransfer(received, content.length);
+			result.complete(content);
+		}
+
+		/**
+		 * Frees the inflater.
+		 */
+		private void end() {
+			if (inflater != null) {
+				inflater.end();
+			}
+		}
+
+		@Override
+		public void onError(Throwable error) {
+			end();
+			result.completeExceptionally(error);
+		}
+
+		@Override
+		public void onComplete() {
+			if (!result.isDone()) {
+				finish();
+			}
+		}
+	}
+}
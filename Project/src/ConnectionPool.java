@@ -0,0 +1,394 @@
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Keeps open HTTP/1.1 connections per host so requests to the same host can
+ * reuse them instead of connecting, and for HTTPS doing a TLS handshake, every
+ * time. A connection is borrowed for one request and given back once its
+ * response has been read completely. Connections idle for too long are closed,
+ * since servers close them on their own after a while.
+ *
+ * @author isaiahjenkins
+ */
+public class ConnectionPool {
+
+	/**
+	 * Idle connections by host, most recently used last
+	 */
+	private final Map<String, ArrayDeque<Connection>> idle;
+
+	/**
+	 * Max number of idle connections kept for a host
+	 */
+	private final int maxIdlePerHost;
+
+	/**
+	 * Time a connection may be idle before it is closed, in milliseconds
+	 */
+	private final long idleMillis;
+
+	/**
+	 * Number of connections opened
+	 */
+	private long opened;
+
+	/**
+	 * Number of times an idle connection was reused
+	 */
+	private long reused;
+
+	/**
+	 * Number of idle connections closed for being idle too long or for being over
+	 * the limit of a host
+	 */
+	private long evicted;
+
+	/**
+	 * Constructor for an empty pool.
+	 *
+	 * @param maxIdlePerHost max number of idle connections kept for a host
+	 * @param idleMillis     time a connection may be idle before it is closed, in
+	 *                       milliseconds
+	 */
+	public ConnectionPool(int maxIdlePerHost, long idleMillis) {
+		this.idle = new HashMap<>();
+		this.maxIdlePerHost = maxIdlePerHost;
+		this.idleMillis = idleMillis;
+	}
+
+	/**
+	 * Returns an idle connection to the host of the url, or opens a new one if
+	 * there is none.
+	 *
+	 * @param url            the url to connect to
+	 * @param connectTimeout max time to wait to connect in milliseconds, or 0 to
+	 *                       wait as long as it takes
+	 * @return a connection that only the caller uses until it is given back
+	 * @throws IOException if unable to connect
+	 */
+	public Connection borrow(URL url, int connectTimeout) throws IOException {
+		String key = key(url);
+		long now = System.currentTimeMillis();
+
+		synchronized (this) {
+			ArrayDeque<Connection> connections = idle.get(key);
+			while (connections != null && !connections.isEmpty()) {
+				Connection connection = connections.pollLast();
+				if (now - connection.lastUsed < idleMillis && !connection.socket.isClosed()) {
+					reused++;
+					connection.reused = true;
+					return connection;
+				}
+				evicted++;
+				connection.close();
+			}
+			opened++;
+		}
+
+		// connect outside the lock, other hosts should not wait for it
+		return connect(url, connectTimeout);
+	}
+
+	/**
+	 * Opens a new connection to the host of the url, even if there are idle
+	 * ones.
+	 *
+	 * @param url            the url to connect to
+	 * @param connectTimeout max time to wait to connect in milliseconds, or 0 to
+	 *                       wait as long as it takes
+	 * @return a connection that only the caller uses until it is given back
+	 * @throws IOException if unable to connect
+	 */
+	public Connection open(URL url, int connectTimeout) throws IOException {
+		synchronized (this) {
+			opened++;
+		}
+		return connect(url, connectTimeout);
+	}
+
+	/**
+	 * Connects to the host of the url.
+	 *
+	 * @param url            the url to connect to
+	 * @param connectTimeout max time to wait to connect in milliseconds, or 0 to
+	 *                       wait as long as it takes
+	 * @return the new connection
+	 * @throws IOException if unable to connect
+	 */
+	private Connection connect(URL url, int connectTimeout) throws IOException {
+		return new Connection(key(url), HttpsFetcher.openConnection(url, connectTimeout));
+	}
+
+	/**
+	 * Gives a connection back to keep it open for the next request to its host.
+	 * The response must have been read completely.
+	 *
+	 * @param connection the connection to give back
+	 */
+	public void release(Connection connection) {
+		connection.lastUsed = System.currentTimeMillis();
+
+		synchronized (this) {
+			evictIdle(connection.lastUsed);
+			ArrayDeque<Connection> connections = idle.computeIfAbsent(connection.key, key -> new ArrayDeque<>());
+			if (connections.size() >= maxIdlePerHost) {
+				evicted++;
+				connections.pollFirst().close();
+			}
+			connections.addLast(connection);
+		}
+	}
+
+	/**
+	 * Closes the idle connections that have been idle for too long.
+	 *
+	 * @param now the current time in milliseconds
+	 */
+	private synchronized void evictIdle(long now) {
+		Iterator<ArrayDeque<Connection>> hosts = idle.values().iterator();
+		while (hosts.hasNext()) {
+			ArrayDeque<Connection> connections = hosts.next();
+			// least recently used first, so stop at the first one still fresh
+			while (!connections.isEmpty() && now - connections.peekFirst().lastUsed >= idleMillis) {
+				evicted++;
+				connections.pollFirst().close();
+			}
+			if (connections.isEmpty()) {
+				hosts.remove();
+			}
+		}
+	}
+
+	/**
+	 * Closes all idle connections.
+	 */
+	public synchronized void closeAll() {
+		for (ArrayDeque<Connection> connections : idle.values()) {
+			for (Connection connection : connections) {
+				connection.close();
+			}
+		}
+		idle.clear();
+	}
+
+	/**
+	 * Returns the number of connections opened.
+	 *
+	 * @return number of opened connections
+	 */
+	public synchronized long getOpened() {
+		return opened;
+	}
+
+	/**
+	 * Returns the number of times an idle connection was reused.
+	 *
+	 * @return number of reused connections
+	 */
+	public synchronized long getReused() {
+		return reused;
+	}
+
+	/**
+	 * Returns the number of idle connections closed by the pool.
+	 *
+	 * @return number of evicted connections
+	 */
+	public synchronized long getEvicted() {
+		return evicted;
+	}
+
+	@Override
+	public synchronized String toString() {
+		int open = 0;
+		for (ArrayDeque<Connection> connections : idle.values()) {
+			open += connections.size();
+		}
+		return String.format("%d connections opened, %d reused, %d evicted, %d idle", opened, reused, evicted, open);
+	}
+
+	/**
+	 * Returns the key of the host of a url, including its protocol and port.
+	 *
+	 * @param url the url
+	 * @return the key for the host
+	 */
+	private static String key(URL url) {
+		int port = url.getPort() < 0 ? url.getDefaultPort() : url.getPort();
+		return url.getProtocol().toLowerCase() + "://" + url.getHost().toLowerCase() + ":" + port;
+	}
+
+	/**
+	 * An open socket with its streams, used by one request at a time.
+	 */
+	public static class Connection {
+		/**
+		 * Key of the host
+		 */
+		private final String key;
+
+		/**
+		 * The socket
+		 */
+		private final Socket socket;
+
+		/**
+		 * Buffered input of the socket, which may hold the start of the next
+		 * response only after the current one was read completely
+		 */
+		private final InputStream input;
+
+		/**
+		 * Output of the socket
+		 */
+		private final OutputStream output;
+
+		/**
+		 * Time the connection was last given back, in milliseconds
+		 */
+		private long lastUsed;
+
+		/**
+		 * Whether the connection was used for an earlier request
+		 */
+		private boolean reused;
+
+		/**
+		 * Max time to wait for a single read in milliseconds, or 0 for no limit
+		 */
+		private int readTimeout;
+
+		/**
+		 * Time by {@link System#nanoTime()} after which reads fail
+		 */
+		private long deadline;
+
+		/**
+		 * Constructor for a new connection.
+		 *
+		 * @param key    key of the host
+		 * @param socket the connected socket
+		 * @throws IOException if unable to get the streams of the socket
+		 */
+		private Connection(String key, Socket socket) throws IOException {
+			this.key = key;
+			this.socket = socket;
+			this.input = new BufferedInputStream(new TimedInputStream(socket.getInputStream()));
+			this.output = socket.getOutputStream();
+			this.lastUsed = System.currentTimeMillis();
+			this.reused = false;
+			this.readTimeout = 0;
+			this.deadline = System.nanoTime() + Long.MAX_VALUE / 2;
+		}
+
+		/**
+		 * Sets the timeouts of the reads for the current request. A read fails
+		 * once it waits longer than the read timeout, or once the deadline passed.
+		 *
+		 * @param readTimeout max time to wait for a single read in milliseconds, or
+		 *                    0 for no limit
+		 * @param deadline    time by {@link System#nanoTime()} after which reads
+		 *                    fail
+		 * @throws IOException if the deadline already passed
+		 */
+		public void setTimeouts(int readTimeout, long deadline) throws IOException {
+			this.readTimeout = readTimeout;
+			this.deadline = deadline;
+			applyTimeouts();
+		}
+
+		/**
+		 * Limits the next read of the socket to the read timeout and the time left
+		 * until the deadline.
+		 *
+		 * @throws IOException if the deadline passed
+		 */
+		private void applyTimeouts() throws IOException {
+			socket.setSoTimeout(HttpsFetcher.timeout(readTimeout, deadline));
+		}
+
+		/**
+		 * Returns the input of the connection.
+		 *
+		 * @return the buffered input stream
+		 */
+		public InputStream getInput() {
+			return input;
+		}
+
+		/**
+		 * Returns the output of the connection.
+		 *
+		 * @return the output stream
+		 */
+		public OutputStream getOutput() {
+			return output;
+		}
+
+		/**
+		 * Returns the socket of the connection.
+		 *
+		 * @return the socket
+		 */
+		public Socket getSocket() {
+			return socket;
+		}
+
+		/**
+		 * Returns true if the connection was used for an earlier request, in which
+		 * case the server may have closed it in the meantime.
+		 *
+		 * @return true if the connection was reused
+		 */
+		public boolean isReused() {
+			return reused;
+		}
+
+		/**
+		 * Closes the connection, ignoring errors.
+		 */
+		public void close() {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// already unusable
+			}
+		}
+
+		/**
+		 * Input of the socket that applies the timeouts before every read, so a
+		 * response sent slowly still fails at the deadline.
+		 */
+		private class TimedInputStream extends FilterInputStream {
+			/**
+			 * Initializes the stream.
+			 *
+			 * @param in input of the socket
+			 */
+			public TimedInputStream(InputStream in) {
+				super(in);
+			}
+
+			@Override
+			public int read() throws IOException {
+				applyTimeouts();
+				return super.read();
+			}
+
+			@Override
+			public int read(byte[] bytes, int offset, int length) throws IOException {
+				applyTimeouts();
+				return super.read(bytes, offset, length);
+			}
+		}
+	}
+}
@@ -24,57 +24,133 @@ public class Driver {
 		// store initial start time
 		Instant start = Instant.now();
 		ArgumentParser argParser = new ArgumentParser(args);
-		InvertedIndex index = null;
+		SearchIndex index = null;
+		WritableIndex writable = null;
+		WritableIndex threadSafe = null;
 		InvertedIndexBuilder indexBuilder = null;
 		QueryParserInterface queryParser = null;
 		WorkQueue queue = null;
+		WorkQueue fetchQueue = null;
+		AsyncHtmlFetcher fetcher = null;
 		WebCrawler crawler = null;
 		HeaderServer server = null;
-		
-		// Build inverted index and queries by multithreading
-		if (argParser.hasFlag("-threads") || argParser.hasFlag("-url") || argParser.hasFlag("-port")) {
+
+		// "-mode and" requires every plain query word instead of any of them
+		boolean conjunctive = argParser.getString("-mode", "or").equalsIgnoreCase("and");
+
+		// Serve a saved index straight from a memory-mapped file
+		if (argParser.hasFlag("-mapped")) {
+			Path snapshot = argParser.getPath("-mapped", Path.of("index.bin"));
 			try {
-				int numThreads = Integer.parseInt(argParser.getString("-threads", "5"));
+				index = new MappedInvertedIndex(snapshot);
+				queryParser = new QueryParser(index, conjunctive);
+			} catch (IOException e) {
+				System.out.println("Unable to map index from the path: " + snapshot.toString());
+				return;
+			}
 
-				if (numThreads < 1) {
-					numThreads = 5;
-				}
+			// a mapped index is read-only, so nothing can be added to it
+			if (argParser.hasFlag("-load") || argParser.hasFlag("-path") || argParser.hasFlag("-url")) {
+				System.out.println("Ignoring -load, -path and -url, the mapped index is read-only: " + snapshot);
+			}
+		} else if (argParser.hasFlag("-threads") || argParser.hasFlag("-url") || argParser.hasFlag("-port")) {
+			int numThreads = 5;
+			try {
+				numThreads = Integer.parseInt(argParser.getString("-threads", "5"));
+			} catch (NumberFormatException e) {
+				System.out.println("Thread number not a number: " + argParser.getString("-threads"));
+			}
+
+			if (numThreads < 1) {
+				numThreads = 5;
+			}
 
-				queue = new WorkQueue(numThreads);
-				ThreadSafeInvertedIndex threadSafe = new ThreadSafeInvertedIndex();
-				index = threadSafe;
-				indexBuilder = new ThreadSafeInvertedIndexBuilder(threadSafe, queue);
-				queryParser = new ThreadSafeQueryParser(threadSafe, queue);
-
-				// create work queue to build inverted index from web pages and crawl
-				if (argParser.hasFlag("-url")) {
-					String seedURL = argParser.getString("-url");
-					int limit = Integer.parseInt(argParser.getString("-limit", "50"));
-					crawler = new WebCrawler(threadSafe, seedURL, limit, queue);
-					crawler.build();
+			queue = new WorkQueue(numThreads);
+			// "-shards" splits the index so merges of different words run in parallel
+			if (argParser.hasFlag("-shards")) {
+				int numShards = numThreads;
+				try {
+					numShards = Integer.parseInt(argParser.getString("-shards", String.valueOf(numThreads)));
+				} catch (NumberFormatException e) {
+					System.out.println("Shard number not a number: " + argParser.getString("-shards"));
 				}
 
-				if (argParser.hasFlag("-port")) {
-					int port = Integer.parseInt(argParser.getString("-port", "8080"));
-					server = new HeaderServer(port, threadSafe);
-					server.start();
+				if (numShards < 1) {
+					numShards = numThreads;
 				}
 
+				threadSafe = new ShardedInvertedIndex(numShards, argParser.hasFlag("-compress"));
+			} else {
+				threadSafe = new ThreadSafeInvertedIndex(argParser.hasFlag("-compress"));
+			}
+			writable = threadSafe;
+			index = writable;
+			// "-reduce" combines local indexes in parallel before the shared index
+			indexBuilder = new ThreadSafeInvertedIndexBuilder(threadSafe, queue, argParser.hasFlag("-reduce"));
+			queryParser = new ThreadSafeQueryParser(threadSafe, queue, conjunctive);
+		} else {
+			writable = new InvertedIndex(argParser.hasFlag("-compress"));
+			index = writable;
+			indexBuilder = new InvertedIndexBuilder(writable);
+			queryParser = new QueryParser(writable, conjunctive);
+		}
+
+		// load a saved index before adding to it
+		if (argParser.hasFlag("-load") && writable != null) {
+			Path snapshot = argParser.getPath("-load", Path.of("index.bin"));
+			try {
+				writable.load(snapshot);
+			} catch (IOException e) {
+				System.out.println("Unable to load index from the path: " + snapshot.toString());
+			}
+		}
+
+		// create work queue to build inverted index from web pages and crawl
+		if (argParser.hasFlag("-url") && argParser.hasValue("-url") && threadSafe != null) {
+			try {
+				String seedURL = argParser.getString("-url");
+				int limit = Integer.parseInt(argParser.getString("-limit", "50"));
+				// "-backlog" bounds the pages waiting in each stage after the fetch
+				int backlog = Integer.parseInt(argParser.getString("-backlog", "0"));
+				// "-connecttimeout", "-readtimeout" and "-deadline" bound each fetch, in seconds
+				HttpsFetcher.setTimeouts(millis(argParser.getString("-connecttimeout", "5")),
+						millis(argParser.getString("-readtimeout", "10")), millis(argParser.getString("-deadline", "30")));
+
+				if (argParser.hasFlag("-async")) {
+					// the client has no read timeout, only the deadline stops a body that trickles in
+					if (HttpsFetcher.getTotalTimeout() == 0) {
+						System.out.println("Deadline of 0 not allowed with -async, using 30 seconds: "
+								+ argParser.getString("-deadline"));
+						HttpsFetcher.setTimeouts(HttpsFetcher.getConnectTimeout(), HttpsFetcher.getReadTimeout(), 30000);
+					}
+
+					// "-async" keeps up to "-fetches" requests outstanding without blocking
+					int maxFetches = Integer.parseInt(argParser.getString("-fetches", "200"));
+					fetcher = new AsyncHtmlFetcher(maxFetches, queue.size());
+					crawler = new WebCrawler(threadSafe, seedURL, limit, queue, fetcher, backlog,
+							argParser.hasFlag("-reduce"));
+				} else {
+					// "-virtual" fetches on virtual threads, at most "-fetches" at a time
+					int maxFetches = Integer.parseInt(argParser.getString("-fetches",
+							argParser.hasFlag("-virtual") ? "100" : "0"));
+					fetchQueue = argParser.hasFlag("-virtual") ? WorkQueue.virtual(Math.max(maxFetches, queue.size()))
+							: queue;
+					crawler = new WebCrawler(threadSafe, seedURL, limit, queue, fetchQueue, maxFetches, backlog,
+							argParser.hasFlag("-reduce"));
+				}
+				crawler.build();
 			} catch (NumberFormatException e) {
-				System.out.println("Thread number not a number: " + argParser.getString("-threads"));
+				System.out.println("Limit, fetches, backlog or timeouts not a number: " + argParser.getString("-limit")
+						+ " " + argParser.getString("-fetches") + " " + argParser.getString("-backlog") + " "
+						+ argParser.getString("-connecttimeout") + " " + argParser.getString("-readtimeout") + " "
+						+ argParser.getString("-deadline"));
 			} catch (IOException e) {
 				System.out.println("Unable to build index from the path: " + e.toString());
-			} catch (Exception e) {
-				System.out.println("An error occurred.");
 			}
-		} else {
-			index = new InvertedIndex();
-			indexBuilder = new InvertedIndexBuilder(index);
-			queryParser = new QueryParser(index);
 		}
 
 		// create work queue to build inverted index
-		if (argParser.hasFlag("-path")) {
+		if (argParser.hasFlag("-path") && indexBuilder != null) {
 			Path path = argParser.getPath("-path");
 			try {
 				if (path != null) {
@@ -85,6 +161,17 @@ public class Driver {
 			}
 		}
     
+		// save index
+		if (argParser.hasFlag("-save")) {
+			Path output = argParser.getPath("-save", Path.of("index.bin"));
+
+			try {
+				index.save(output);
+			} catch (IOException e) {
+				System.out.println("Unable to save index to the path: " + output.toString());
+			}
+		}
+
 		// output index
 		if (argParser.hasFlag("-index")) {
 			Path output = argParser.getPath("-index", Path.of("index.json"));
@@ -131,13 +218,66 @@ public class Driver {
 			}
 		}
 
+		// serve the index, blocks until the server stops
+		if (argParser.hasFlag("-port")) {
+			try {
+				int port = Integer.parseInt(argParser.getString("-port", "8080"));
+				server = new HeaderServer(port, index, conjunctive);
+				server.start();
+			} catch (NumberFormatException e) {
+				System.out.println("Port not a number: " + argParser.getString("-port"));
+			} catch (Exception e) {
+				System.out.println("An error occurred.");
+			}
+		}
+
 		if (queue != null) {
 			queue.shutdown();
 		}
 
+		if (fetchQueue != null && fetchQueue != queue) {
+			fetchQueue.shutdown();
+		}
+
+		if (fetcher != null) {
+			fetcher.shutdown();
+		}
+
+		// close the connections kept open for the crawl
+		if (crawler != null) {
+			HttpsFetcher.getConnectionPool().closeAll();
+		}
+
+		// "-stats" shows how much the shard locks were contended
+		if (argParser.hasFlag("-stats") && threadSafe instanceof ShardedInvertedIndex) {
+			System.out.println("Shard locks: " + ((ShardedInvertedIndex) threadSafe).getLockStatistics());
+		}
+
+		// "-stats" also shows the throughput and depth of each crawl stage
+		if (argParser.hasFlag("-stats") && crawler != null) {
+			for (PipelineStage stage : crawler.getStages()) {
+				System.out.println("Crawl stage " + stage);
+			}
+			System.out.println("Crawl " + (fetcher != null ? fetcher : HttpsFetcher.getConnectionPool()));
+			System.out.println("Crawl transfer: " + HttpsFetcher.getTransferStatistics());
+			System.out.println("Crawl timeouts: " + HttpsFetcher.getTimedOut());
+		}
+
 		// calculate time elapsed and output
 		Duration elapsed = Duration.between(start, Instant.now());
 		double seconds = (double) elapsed.toMillis() / Duration.ofSeconds(1).toMillis();
 		System.out.printf("Elapsed: %f seconds%n", seconds);
 	}
+
+	/**
+	 * Converts a timeout given in seconds, possibly with a fraction, to
+	 * milliseconds.
+	 *
+	 * @param seconds the timeout in seconds
+	 * @return the timeout in milliseconds
+	 * @throws NumberFormatException if the timeout is not a number
+	 */
+	private static int millis(String seconds) throws NumberFormatException {
+		return (int) Math.round(Double.parseDouble(seconds) * 1000);
+	}
 }
\ No newline at end of file
@@ -4,7 +4,6 @@ import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashSet;
 import java.util.List;
 
 import javax.servlet.ServletException;
@@ -36,13 +35,23 @@ public class HeaderServer {
 	/**
 	 * Tree map for inverted index.
 	 */
-	private static ThreadSafeInvertedIndex index;
+	private static SearchIndex index;
+
+	/**
+	 * Whether every plain query word is required.
+	 */
+	private static boolean conjunctive;
 
 	/**
 	 * Port number
 	 */
 	private int port;
 
+	/**
+	 * Maximum number of results shown for a search.
+	 */
+	public final static int MAX_RESULTS = 50;
+
 	/**
 	 * Final constant default to help create stemmer instances.
 	 */
@@ -56,10 +65,24 @@ public class HeaderServer {
 	 * @param invertedIndex crawled index for webpage
 	 * @throws Exception exception for header server
 	 */
-	public HeaderServer(int port, ThreadSafeInvertedIndex invertedIndex) throws Exception {
+	public HeaderServer(int port, SearchIndex invertedIndex) throws Exception {
+		this(port, invertedIndex, false);
+	}
+
+	/**
+	 * Starts a Jetty server on port 8080, and maps /check requests to the
+	 * {@link HeaderServlet}.
+	 * 
+	 * @param port          port number
+	 * @param invertedIndex crawled index for webpage
+	 * @param conjunctive   whether every plain query word is required
+	 * @throws Exception exception for header server
+	 */
+	public HeaderServer(int port, SearchIndex invertedIndex, boolean conjunctive) throws Exception {
 		this.server = new Server(port);
 		this.port = port;
 		index = invertedIndex;
+		HeaderServer.conjunctive = conjunctive;
 		queries = new ArrayList<>();
 	}
 
@@ -119,6 +142,8 @@ public class HeaderServer {
 				out.printf("<p>No search results.</p>%n");
 			} else {
 				for (String url : queries) {
+					// Avoid XSS attacks using Apache Commons Text
+					url = StringEscapeUtils.escapeHtml4(url);
 					out.printf("<p>%d. <a href=\"%s\">%s</a></p>%n", i, url, url);
 					i++;
 				}
@@ -169,17 +194,9 @@ public class HeaderServer {
 
 			query = query == null ? "" : query;
 
-			// Avoid XSS attacks using Apache Commons Text
-			query = StringEscapeUtils.escapeHtml4(query);
-			
-			HashSet<String> stemmed = new HashSet<>(); 
-			
-			for (String queriedWord : TextParser.parse(query)) {
-				queriedWord = stemmer.stem(queriedWord).toString();
-				stemmed.add(queriedWord);
-			}
-			
-			var results = index.partialSearch(stemmed);
+			// parsed before escaping so quoted phrases keep their quotes; the query
+			// itself is never written back to the page
+			var results = index.search(Query.parse(query, stemmer, conjunctive), false, MAX_RESULTS);
 			queries.clear();
 			for (var result : results) {
 				queries.add(result.getWhere());
@@ -1,7 +1,8 @@
-import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintWriter;
 import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.util.List;
 import java.util.Map;
@@ -73,8 +74,7 @@ public class HtmlFetcher {
 	 *
 	 * @see HttpsFetcher#openConnection(URL)
 	 * @see HttpsFetcher#printGetRequest(PrintWriter, URL)
-	 * @see HttpsFetcher#getHeaderFields(BufferedReader)
-	 * @see HttpsFetcher#getContent(BufferedReader)
+	 * @see HttpsFetcher#getHeaderFields(InputStream)
 	 *
 	 * @see String#join(CharSequence, CharSequence...)
 	 *
@@ -82,14 +82,50 @@ public class HtmlFetcher {
 	 * @see #isRedirect(Map)
 	 */
 	public static String fetch(URL url, int redirects) {
+		return fetch(url, redirects, HttpsFetcher.MAX_BODY);
+	}
+
+	/**
+	 * Fetches the resource like {@link #fetch(URL, int)}, but reads at most the
+	 * given number of bytes of HTML and cuts off the rest.
+	 *
+	 * @param url       the url to fetch
+	 * @param redirects the number of times to follow redirects
+	 * @param maxBytes  max number of body bytes to read for each response
+	 * @return the html or {@code null} if unable to fetch the resource or the
+	 *         resource is not html
+	 *
+	 * @see HttpsFetcher#fetch(URL, int)
+	 */
+	public static String fetch(URL url, int redirects, int maxBytes) {
+		return fetch(url, redirects, maxBytes, HttpsFetcher.newDeadline());
+	}
+
+	/**
+	 * Fetches the resource like {@link #fetch(URL, int, int)}, giving up when
+	 * the deadline passes, however many redirects were followed by then.
+	 *
+	 * @param url       the url to fetch
+	 * @param redirects the number of times to follow redirects
+	 * @param maxBytes  max number of body bytes to read for each response
+	 * @param deadline  time by {@link System#nanoTime()} when the whole fetch
+	 *                  must end
+	 * @return the html or {@code null} if unable to fetch the resource in time or
+	 *         the resource is not html
+	 *
+	 * @see HttpsFetcher#fetch(URL, int, long)
+	 */
+	private static String fetch(URL url, int redirects, int maxBytes, long deadline) {
 		try {
-			Map<String, List<String>> headers = HttpsFetcher.fetch(url);
+			Map<String, List<String>> headers = HttpsFetcher.fetch(url, maxBytes, deadline);
 			if (getStatusCode(headers) == 200 && isHtml(headers)) {
 				return String.join("\n", headers.get("Content"));
 			}
 			if (isRedirect(headers) && redirects > 0) {
-				return fetch(new URL(headers.get("Location").get(0)), redirects - 1);
+				return fetch(new URL(headers.get("Location").get(0)), redirects - 1, maxBytes, deadline);
 			}
+		} catch (SocketTimeoutException e) {
+			// counted by the fetcher, a slow host is not an error
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
@@ -1,47 +1,357 @@
-import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.PushbackInputStream;
+import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
+import java.net.ProtocolException;
 import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.net.UnknownHostException;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
-import javax.net.SocketFactory;
 import javax.net.ssl.SSLSocketFactory;
 
 /**
  * An alternative to using {@link Socket} connections instead of a
  * {@link URLConnection} to fetch the headers and content from a URL on the web.
+ *
+ * Connections are kept open and reused for later requests to the same host.
+ * Responses are read exactly to the end of their body, using the
+ * "Content-Length" header or the chunked transfer coding, so the next response
+ * can be read from the same socket. The body is decoded with the charset named
+ * in its "Content-Type" header, and at most a max number of body bytes are
+ * read, so a huge page cannot fill the memory of the thread fetching it.
+ * Connecting, each read and the whole fetch have timeouts, so a slow host
+ * cannot hold a thread for longer than the total timeout.
+ *
+ * @see ConnectionPool
  */
 public class HttpsFetcher {
+
+	/**
+	 * Idle connections shared by all fetches
+	 */
+	private static final ConnectionPool POOL = new ConnectionPool(8, 5000);
+
+	/**
+	 * Body bytes received by all fetches, before decoding
+	 */
+	private static final AtomicLong BYTES_RECEIVED = new AtomicLong();
+
+	/**
+	 * Body bytes of all fetches after decoding
+	 */
+	private static final AtomicLong BYTES_DECODED = new AtomicLong();
+
+	/**
+	 * Default max number of body bytes read for a response
+	 */
+	public static final int MAX_BODY = 8 * 1024 * 1024;
+
+	/**
+	 * Number of fetches that failed because they took too long
+	 */
+	private static final AtomicLong TIMED_OUT = new AtomicLong();
+
+	/**
+	 * Max time to connect in milliseconds, or 0 for no limit
+	 */
+	private static volatile int connectTimeout = 5000;
+
+	/**
+	 * Max time to wait for a single read in milliseconds, or 0 for no limit
+	 */
+	private static volatile int readTimeout = 10000;
+
+	/**
+	 * Max time for a whole fetch including redirects in milliseconds, or 0 for
+	 * no limit
+	 */
+	private static volatile int totalTimeout = 30000;
+
+	/**
+	 * Sets the timeouts of all later fetches. A value of 0 means no limit.
+	 *
+	 * @param connect max time to connect in milliseconds
+	 * @param read    max time to wait for a single read in milliseconds
+	 * @param total   max time for a whole fetch including redirects in
+	 *                milliseconds
+	 */
+	public static void setTimeouts(int connect, int read, int total) {
+		connectTimeout = Math.max(0, connect);
+		readTimeout = Math.max(0, read);
+		totalTimeout = Math.max(0, total);
+	}
+
+	/**
+	 * Returns the max time to connect in milliseconds, or 0 for no limit.
+	 *
+	 * @return the connect timeout
+	 */
+	public static int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	/**
+	 * Returns the max time to wait for a single read in milliseconds, or 0 for no
+	 * limit.
+	 *
+	 * @return the read timeout
+	 */
+	public static int getReadTimeout() {
+		return readTimeout;
+	}
+
+	/**
+	 * Returns the max time for a whole fetch including redirects in
+	 * milliseconds, or 0 for no limit.
+	 *
+	 * @return the total timeout
+	 */
+	public static int getTotalTimeout() {
+		return totalTimeout;
+	}
+
+	/**
+	 * Returns the deadline of a fetch that starts now, by
+	 * {@link System#nanoTime()}. Without a total timeout the deadline is so far
+	 * away it is never reached.
+	 *
+	 * @return the deadline for a new fetch
+	 */
+	public static long newDeadline() {
+		int total = totalTimeout;
+		return System.nanoTime() + (total > 0 ? total * 1_000_000L : Long.MAX_VALUE / 2);
+	}
+
+	/**
+	 * Returns the time to wait for one step of a fetch: the timeout of the step,
+	 * but no longer than the time left until the deadline.
+	 *
+	 * @param timeout  max time for the step in milliseconds, or 0 for no limit
+	 * @param deadline time by {@link System#nanoTime()} when the fetch must end
+	 * @return time to wait in milliseconds, at least 1
+	 * @throws SocketTimeoutException if the deadline passed
+	 */
+	public static int timeout(int timeout, long deadline) throws SocketTimeoutException {
+		long left = (deadline - System.nanoTime()) / 1_000_000;
+		if (left <= 0) {
+			throw new SocketTimeoutException("Fetch deadline passed");
+		}
+		return (int) Math.max(1, timeout > 0 ? Math.min(timeout, left) : Math.min(Integer.MAX_VALUE, left));
+	}
+
+	/**
+	 * Counts a fetch that failed because it took too long.
+	 */
+	static void countTimeout() {
+		TIMED_OUT.incrementAndGet();
+	}
+
+	/**
+	 * Returns the number of fetches that failed because they took too long.
+	 *
+	 * @return number of timed out fetches
+	 */
+	public static long getTimedOut() {
+		return TIMED_OUT.get();
+	}
+
 	/**
 	 * Fetches the headers and content for the specified URL. The content is placed
-	 * as a list of all the lines fetched under the "Content" key.
+	 * as a list of all the lines fetched under the "Content" key. At most
+	 * {@link #MAX_BODY} bytes of content are read.
 	 *
 	 * @param url the url to fetch
 	 * @return a map with the headers and content
 	 * @throws IOException if unable to fetch headers and content
 	 */
 	public static Map<String, List<String>> fetch(URL url) throws IOException {
-		try (Socket socket = openConnection(url);
-				PrintWriter request = new PrintWriter(socket.getOutputStream());
-				InputStreamReader input = new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8);
-				BufferedReader response = new BufferedReader(input);) {
-			printGetRequest(request, url);
-			Map<String, List<String>> headers = getHeaderFields(response);
-			List<String> content = getContent(response);
-			headers.put("Content", content);
+		return fetch(url, MAX_BODY);
+	}
+
+	/**
+	 * Fetches the headers and content for the specified URL. The content is placed
+	 * as a list of all the lines fetched under the "Content" key. A longer body
+	 * is cut off after the max number of bytes.
+	 *
+	 * @param url      the url to fetch
+	 * @param maxBytes max number of body bytes to read
+	 * @return a map with the headers and content
+	 * @throws IOException if unable to fetch headers and content
+	 */
+	public static Map<String, List<String>> fetch(URL url, int maxBytes) throws IOException {
+		return fetch(url, maxBytes, newDeadline());
+	}
+
+	/**
+	 * Fetches the headers and content for the specified URL like
+	 * {@link #fetch(URL, int)}, failing with a {@link SocketTimeoutException} if
+	 * connecting or a single read takes longer than its timeout, or the deadline
+	 * passes. Timed out fetches are counted.
+	 *
+	 * @param url      the url to fetch
+	 * @param maxBytes max number of body bytes to read
+	 * @param deadline time by {@link System#nanoTime()} when the fetch must end
+	 * @return a map with the headers and content
+	 * @throws IOException if unable to fetch headers and content in time
+	 *
+	 * @see #setTimeouts(int, int, int)
+	 * @see #newDeadline()
+	 */
+	public static Map<String, List<String>> fetch(URL url, int maxBytes, long deadline) throws IOException {
+		ConnectionPool.Connection connection = connect(url, deadline, false);
+		try {
+			return fetch(url, connection, maxBytes, deadline);
+		} catch (EOFException | SocketException e) {
+			// the server may have closed a reused connection while it was idle, which
+			// only shows once it is used, so try once more on a new connection
+			if (!connection.isReused()) {
+				throw e;
+			}
+		}
+		return fetch(url, connect(url, deadline, true), maxBytes, deadline);
+	}
+
+	/**
+	 * Returns a connection to the host of the url, counting a connect that
+	 * timed out.
+	 *
+	 * @param url      the url to connect to
+	 * @param deadline time by {@link System#nanoTime()} when the fetch must end
+	 * @param fresh    whether to open a new connection instead of reusing an idle
+	 *                 one
+	 * @return a connection only the caller uses
+	 * @throws IOException if unable to connect in time
+	 */
+	private static ConnectionPool.Connection connect(URL url, long deadline, boolean fresh) throws IOException {
+		try {
+			int timeout = timeout(connectTimeout, deadline);
+			return fresh ? POOL.open(url, timeout) : POOL.borrow(url, timeout);
+		} catch (SocketTimeoutException e) {
+			countTimeout();
+			throw e;
+		}
+	}
+
+	/**
+	 * Fetches the url on a connection with the timeouts of the fetch, and closes
+	 * the connection if the fetch fails.
+	 *
+	 * @param url        the url to fetch
+	 * @param connection a connection to the host of the url
+	 * @param maxBytes   max number of body bytes to read
+	 * @param deadline   time by {@link System#nanoTime()} when the fetch must end
+	 * @return a map with the headers and content
+	 * @throws IOException if unable to fetch headers and content in time
+	 */
+	private static Map<String, List<String>> fetch(URL url, ConnectionPool.Connection connection, int maxBytes,
+			long deadline) throws IOException {
+		try {
+			connection.setTimeouts(readTimeout, deadline);
+			return fetch(url, connection, maxBytes);
+		} catch (SocketTimeoutException e) {
+			connection.close();
+			countTimeout();
+			throw e;
+		} catch (IOException e) {
+			connection.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Sends a request for the url on a borrowed connection and reads the
+	 * response. Gives the connection back to the pool if it can be reused,
+	 * otherwise closes it.
+	 *
+	 * @param url        the url to fetch
+	 * @param connection a connection to the host of the url
+	 * @param maxBytes   max number of body bytes to read
+	 * @return a map with the headers and content
+	 * @throws IOException if unable to fetch headers and content
+	 */
+	private static Map<String, List<String>> fetch(URL url, ConnectionPool.Connection connection, int maxBytes)
+			throws IOException {
+		// not closed, that would close the socket
+		PrintWriter request = new PrintWriter(new OutputStreamWriter(connection.getOutput(), StandardCharsets.UTF_8));
+		printGetRequest(request, url);
+
+		InputStream response = connection.getInput();
+		Map<String, List<String>> headers = getHeaderFields(response);
+		String status = headers.get(null).get(0);
+		int code = getStatusCode(status);
+
+		// one byte over the max shows the body was cut off
+		int limit = Math.min(Math.max(0, maxBytes), Integer.MAX_VALUE - 1) + 1;
+		String transferEncoding = getHeader(headers, "Transfer-Encoding");
+		String contentLength = getHeader(headers, "Content-Length");
+
+		BodyInputStream body;
+		if (code == 204 || code == 304) {
+			body = new BodyInputStream(response, 0, false);
+		} else if (transferEncoding != null && transferEncoding.toLowerCase().contains("chunked")) {
+			body = new BodyInputStream(response, 0, true);
+		} else if (contentLength != null) {
+			try {
+				body = new BodyInputStream(response, Long.parseLong(contentLength.trim()), false);
+			} catch (NumberFormatException e) {
+				throw new ProtocolException("Bad Content-Length: " + contentLength);
+			}
+		} else {
+			// the body ends when the server closes the connection
+			body = new BodyInputStream(response, -1, false);
+		}
 
-			return headers;
+		byte[] content;
+		try (InputStream decoded = decode(body, getHeader(headers, "Content-Encoding"))) {
+			content = decoded.readNBytes(limit);
 		}
+
+		boolean framed = content.length <= maxBytes && body.isFramed() && body.read() == -1;
+		if (content.length > maxBytes) {
+			content = Arrays.copyOf(content, maxBytes);
+		}
+		countTransfer(body.getCount(), content.length);
+
+		boolean keepAlive = framed && status.startsWith("HTTP/1.1")
+				&& !"close".equalsIgnoreCase(getHeader(headers, "Connection"));
+		if (keepAlive) {
+			POOL.release(connection);
+		} else {
+			connection.close();
+		}
+
+		Charset charset = getCharset(getHeader(headers, "Content-Type"));
+		headers.put("Content", new String(content, charset).lines().collect(Collectors.toList()));
+		return headers;
+	}
+
+	/**
+	 * Returns the pool of connections shared by all fetches.
+	 *
+	 * @return the connection pool
+	 */
+	public static ConnectionPool getConnectionPool() {
+		return POOL;
 	}
 
 	/**
@@ -70,6 +380,23 @@ public class HttpsFetcher {
 	 * @see URL#openConnection()
 	 */
 	public static Socket openConnection(URL url) throws UnknownHostException, IOException {
+		return openConnection(url, connectTimeout);
+	}
+
+	/**
+	 * Opens a connection like {@link #openConnection(URL)}, failing with a
+	 * {@link SocketTimeoutException} if connecting takes longer than the timeout.
+	 * The TLS handshake of an HTTPS connection happens on its first read or
+	 * write, so it is limited by the read timeout instead.
+	 *
+	 * @param url            the url to connect
+	 * @param connectTimeout max time to connect in milliseconds, or 0 for no
+	 *                       limit
+	 * @return a socket connection for that url
+	 * @throws UnknownHostException error for host
+	 * @throws IOException          error for file
+	 */
+	public static Socket openConnection(URL url, int connectTimeout) throws UnknownHostException, IOException {
 		String protocol = url.getProtocol();
 		String host = url.getHost();
 
@@ -77,8 +404,15 @@ public class HttpsFetcher {
 		int defaultPort = https ? 443 : 80;
 		int port = url.getPort() < 0 ? defaultPort : url.getPort();
 
-		return https ? SSLSocketFactory.getDefault().createSocket(host, port)
-				: SocketFactory.getDefault().createSocket(host, port);
+		Socket socket = new Socket();
+		try {
+			socket.connect(new InetSocketAddress(host, port), connectTimeout);
+			return https ? ((SSLSocketFactory) SSLSocketFactory.getDefault()).createSocket(socket, host, port, true)
+					: socket;
+		} catch (IOException e) {
+			socket.close();
+			throw e;
+		}
 	}
 
 	/**
@@ -94,48 +428,351 @@ public class HttpsFetcher {
 
 		writer.printf("GET %s HTTP/1.1\r\n", resource);
 		writer.printf("Host: %s\r\n", host);
-		writer.printf("Connection: close\r\n");
+		writer.printf("Accept-Encoding: gzip, deflate\r\n");
+		writer.printf("Connection: keep-alive\r\n");
 		writer.printf("\r\n");
 		writer.flush();
 	}
 
 	/**
-	 * Gets the header fields from a reader associated with a socket connection.
-	 * Requires that the socket reader has not yet been used, otherwise this method
-	 * will return unpredictable results.
+	 * Gets the header fields from the input of a socket connection, reading
+	 * exactly up to the start of the body.
 	 *
-	 * @param response a reader created from a socket connection
+	 * @param response the input of a socket connection
 	 * @return a map of header fields to a list of header values
-	 * @throws IOException error for file
+	 * @throws IOException if the connection was closed before the headers ended
 	 *
 	 * @see URLConnection#getHeaderFields()
 	 */
-	public static Map<String, List<String>> getHeaderFields(BufferedReader response) throws IOException {
+	public static Map<String, List<String>> getHeaderFields(InputStream response) throws IOException {
 		Map<String, List<String>> results = new HashMap<>();
 
-		String line = response.readLine();
+		String line = readLine(response);
+		if (line == null) {
+			throw new EOFException("Connection closed before the response");
+		}
 		results.put(null, List.of(line));
 
-		while ((line = response.readLine()) != null && !line.isBlank()) {
-			String[] split = line.split(":\\s+", 2);
-			assert split.length == 2;
-
-			results.putIfAbsent(split[0], new ArrayList<>());
-			results.get(split[0]).add(split[1]);
+		while ((line = readLine(response)) != null && !line.isBlank()) {
+			String[] split = line.split(":\\s*", 2);
+			if (split.length == 2) {
+				results.putIfAbsent(split[0], new ArrayList<>());
+				results.get(split[0]).add(split[1]);
+			}
 		}
 
+		if (line == null) {
+			throw new EOFException("Connection closed before the end of the headers");
+		}
 		return results;
 	}
 
 	/**
-	 * Gets the content from a socket. Whether this output includes headers depends
-	 * how the socket connection has already been used.
+	 * Returns the first value of a header, ignoring the case of its name.
 	 *
-	 * @param response the reader created from a socket connection
-	 * @return a list of lines read from the socket reader
-	 * @throws IOException error for file
+	 * @param headers the headers
+	 * @param name    name of the header
+	 * @return the first value or null if there is no such header
 	 */
-	public static List<String> getContent(BufferedReader response) throws IOException {
-		return response.lines().collect(Collectors.toList());
+	public static String getHeader(Map<String, List<String>> headers, String name) {
+		for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+			if (name.equalsIgnoreCase(entry.getKey()) && !entry.getValue().isEmpty()) {
+				return entry.getValue().get(0);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Parses the status code of a status line.
+	 *
+	 * @param status the status line
+	 * @return the status code or -1 if unable to parse it
+	 */
+	private static int getStatusCode(String status) {
+		String[] split = status.split(" ", 3);
+		try {
+			return split.length > 1 ? Integer.parseInt(split[1]) : -1;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Returns the charset named in a "Content-Type" header value, or UTF-8 if it
+	 * names none or one this runtime does not support.
+	 *
+	 * @param contentType the value of the header, or null
+	 * @return the charset of the body
+	 */
+	public static Charset getCharset(String contentType) {
+		if (contentType != null) {
+			for (String parameter : contentType.split(";")) {
+				String[] split = parameter.trim().split("=", 2);
+				if (split.length == 2 && split[0].trim().equalsIgnoreCase("charset")) {
+					try {
+						return Charset.forName(split[1].trim().replace("\"", ""));
+					} catch (IllegalArgumentException e) {
+						break;
+					}
+				}
+			}
+		}
+		return StandardCharsets.UTF_8;
+	}
+
+	/**
+	 * Returns a stream that decodes a body with the given content coding as it is
+	 * read. Supports gzip and deflate, the codings this fetcher asks for.
+	 *
+	 * @param body            the body as sent
+	 * @param contentEncoding the value of the "Content-Encoding" header, or null
+	 * @return the decoded body
+	 * @throws IOException if the coding is not supported or the body does not
+	 *                     start like it
+	 */
+	public static InputStream decode(InputStream body, String contentEncoding) throws IOException {
+		String coding = contentEncoding == null ? "identity" : contentEncoding.trim().toLowerCase();
+		if (coding.isEmpty() || coding.equals("identity")) {
+			return body;
+		}
+
+		// an empty body has no header to read
+		PushbackInputStream peek = new PushbackInputStream(body, 2);
+		byte[] start = peek.readNBytes(2);
+		if (start.length == 0) {
+			return peek;
+		}
+		peek.unread(start);
+
+		switch (coding) {
+		case "gzip":
+		case "x-gzip":
+			return new GZIPInputStream(peek);
+		case "deflate":
+			// meant to be zlib wrapped, but some servers send raw deflate
+			boolean zlib = start.length == 2 && (start[0] & 0x0F) == 8
+					&& (((start[0] & 0xFF) << 8) | (start[1] & 0xFF)) % 31 == 0;
+			Inflater inflater = new Inflater(!zlib);
+			return new InflaterInputStream(peek, inflater) {
+				@Override
+				public void close() throws IOException {
+					super.close();
+					inflater.end();
+				}
+			};
+		default:
+			throw new ProtocolException("Unsupported Content-Encoding: " + contentEncoding);
+		}
+	}
+
+	/**
+	 * Counts the bytes of a response body.
+	 *
+	 * @param received bytes received, before decoding
+	 * @param decoded  bytes after decoding
+	 */
+	static void countTransfer(long received, long decoded) {
+		BYTES_RECEIVED.addAndGet(received);
+		BYTES_DECODED.addAndGet(decoded);
+	}
+
+	/**
+	 * Returns the number of body bytes received by all fetches, before decoding.
+	 *
+	 * @return bytes received
+	 */
+	public static long getBytesReceived() {
+		return BYTES_RECEIVED.get();
+	}
+
+	/**
+	 * Returns the number of body bytes of all fetches after decoding.
+	 *
+	 * @return bytes decoded
+	 */
+	public static long getBytesDecoded() {
+		return BYTES_DECODED.get();
+	}
+
+	/**
+	 * Returns a summary of the body bytes received and the bytes compression
+	 * saved.
+	 *
+	 * @return the transfer summary
+	 */
+	public static String getTransferStatistics() {
+		long received = getBytesReceived();
+		long decoded = getBytesDecoded();
+		long saved = Math.max(0, decoded - received);
+		return String.format("%d body bytes received for %d bytes of content, %d saved by compression (%.0f%%)",
+				received, decoded, saved, decoded == 0 ? 0.0 : 100.0 * saved / decoded);
+	}
+
+	/**
+	 * Reads a line of a response head, without its line ending.
+	 *
+	 * @param response the input of a socket connection
+	 * @return the line or null if the connection was closed before any byte
+	 * @throws IOException if unable to read or the line is too long
+	 */
+	private static String readLine(InputStream response) throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		int next;
+		while ((next = response.read()) != -1 && next != '\n') {
+			if (line.size() >= 65536) {
+				throw new ProtocolException("Response line too long");
+			}
+			line.write(next);
+		}
+
+		if (next == -1 && line.size() == 0) {
+			return null;
+		}
+
+		String result = line.toString(StandardCharsets.ISO_8859_1);
+		return result.endsWith("\r") ? result.substring(0, result.length() - 1) : result;
+	}
+
+	/**
+	 * The body of a response, read from the input of a connection without reading
+	 * past its end. The body ends after a given number of bytes, with the last
+	 * chunk of the chunked transfer coding, or when the connection is closed.
+	 * Closing this stream leaves the connection open.
+	 */
+	private static class BodyInputStream extends InputStream {
+		/** The input of the connection */
+		private final InputStream response;
+
+		/** Whether the body uses the chunked transfer coding */
+		private final boolean chunked;
+
+		/** Bytes left in the body or the current chunk, or -1 to read until closed */
+		private long remaining;
+
+		/** Whether a chunk was read whose line ending is still unread */
+		private boolean inChunks;
+
+		/** Whether the end of the body was read */
+		private boolean ended;
+
+		/** Number of body bytes read */
+		private long count;
+
+		/**
+		 * Initializes the body.
+		 *
+		 * @param response the input of the connection, positioned at the body
+		 * @param length   length of the body, or -1 to read until the connection is
+		 *                 closed; ignored for chunked bodies
+		 * @param chunked  whether the body uses the chunked transfer coding
+		 */
+		public BodyInputStream(InputStream response, long length, boolean chunked) {
+			this.response = response;
+			this.chunked = chunked;
+			this.remaining = chunked ? 0 : length;
+			this.inChunks = false;
+			this.ended = false;
+			this.count = 0;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] single = new byte[1];
+			return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length) throws IOException {
+			if (ended) {
+				return -1;
+			}
+			if (length == 0) {
+				return 0;
+			}
+
+			if (remaining == 0) {
+				if (!chunked || !nextChunk()) {
+					ended = true;
+					return -1;
+				}
+			}
+
+			int wanted = remaining < 0 ? length : (int) Math.min(length, remaining);
+			int read = response.read(bytes, offset, wanted);
+			if (read == -1) {
+				if (remaining < 0) {
+					ended = true;
+					return -1;
+				}
+				throw new EOFException("Connection closed in the body");
+			}
+
+			if (remaining > 0) {
+				remaining -= read;
+			}
+			count += read;
+			return read;
+		}
+
+		/**
+		 * Reads the size of the next chunk, or the trailer after the last chunk.
+		 *
+		 * @return true if there is another chunk, false after the last chunk
+		 * @throws IOException if the chunks are malformed or the connection was
+		 *                     closed
+		 */
+		private boolean nextChunk() throws IOException {
+			if (inChunks) {
+				// line ending of the previous chunk
+				readLine(response);
+			}
+			inChunks = true;
+
+			String line = readLine(response);
+			if (line == null) {
+				throw new EOFException("Connection closed before the last chunk");
+			}
+
+			try {
+				// chunk extensions after ';' are ignored
+				remaining = Long.parseLong(line.split(";", 2)[0].trim(), 16);
+			} catch (NumberFormatException e) {
+				throw new ProtocolException("Bad chunk size: " + line);
+			}
+
+			if (remaining <= 0) {
+				// skip the trailer
+				while ((line = readLine(response)) != null && !line.isEmpty()) {
+					continue;
+				}
+				return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Returns true if the end of the body can be found without the connection
+		 * being closed, so the connection can be reused once it is read.
+		 *
+		 * @return true if the body has a length or is chunked
+		 */
+		public boolean isFramed() {
+			return chunked || remaining >= 0;
+		}
+
+		/**
+		 * Returns the number of body bytes read, not counting chunk sizes.
+		 *
+		 * @return number of bytes read
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		@Override
+		public void close() {
+			// the connection stays open for the next response
+		}
 	}
 }
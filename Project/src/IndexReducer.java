@@ -0,0 +1,68 @@
+/**
+ * Combines the local indexes built by parallel tasks without touching the
+ * shared index. A finished local index waits in a slot until another one
+ * arrives, then the task that brought the second one merges the pair outside
+ * of any lock and offers the result again. Pairs are combined by many workers
+ * at once, which forms a reduction tree, and only the single index left at the
+ * end needs to be merged into the shared index.
+ *
+ * The smaller index of a pair is always merged into the larger one, so every
+ * word is copied a logarithmic number of times at most.
+ *
+ * @author isaiahjenkins
+ */
+public class IndexReducer {
+
+	/**
+	 * Index waiting for a partner, or null.
+	 */
+	private InvertedIndex pending;
+
+	/**
+	 * Constructor for an empty reducer.
+	 */
+	public IndexReducer() {
+		pending = null;
+	}
+
+	/**
+	 * Adds a local index, merging it with waiting indexes until it can wait in
+	 * the slot itself. The index must not be used by the caller afterwards.
+	 *
+	 * @param localIndex finished local index
+	 */
+	public void add(InvertedIndex localIndex) {
+		InvertedIndex reduced = localIndex;
+
+		while (true) {
+			InvertedIndex other;
+			synchronized (this) {
+				if (pending == null) {
+					pending = reduced;
+					return;
+				}
+				other = pending;
+				pending = null;
+			}
+
+			if (other.getWords().size() < reduced.getWords().size()) {
+				reduced.addAll(other);
+			} else {
+				other.addAll(reduced);
+				reduced = other;
+			}
+		}
+	}
+
+	/**
+	 * Returns the combined index and empties the reducer. Must only be called
+	 * once every task that adds to the reducer has finished.
+	 *
+	 * @return the combined index, or null if nothing was added
+	 */
+	public synchronized InvertedIndex finish() {
+		InvertedIndex reduced = pending;
+		pending = null;
+		return reduced;
+	}
+}
@@ -0,0 +1,490 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Writes and reads an inverted index as a compact binary file. The file holds
+ * a fixed-size header, the locations and their counts, the postings of every
+ * word, the words as a front-coded {@link TermDictionary} that can be searched
+ * in place, and a directory with the postings offset of every word.
+ *
+ * <pre>
+ * header:    magic, version, location count, word count, locations offset,
+ *            postings offset, words offset, blocks offset, directory offset
+ * locations: for each location ID: count, length, UTF-8 bytes
+ * postings:  for each word: location count, skip table, then for each
+ *            location: ID gap, position count, position bytes, position gaps
+ * words:     front-coded blocks of sorted words
+ * blocks:    for each block of words: offset of the block
+ * directory: for each word: offset of its postings, score bound
+ * </pre>
+ *
+ * Counts, lengths and gaps are written with {@link VByte}; offsets are longs.
+ * Like a compressed {@link PostingList}, every {@link PostingList#BLOCK_SIZE}
+ * locations of a word start a block whose first location ID is written in full
+ * instead of as a gap. A word with more than one block has a skip table of
+ * fixed-size entries, the first location ID and the offset of each block from
+ * the end of the table as ints, so a cursor can jump to the block holding a
+ * location without reading the ones before it.
+ * The score bound of a word is the largest number of positions it has in a
+ * location divided by the word count of the location, written as a double.
+ *
+ * @author isaiahjenkins
+ */
+public class IndexSnapshot {
+
+	/**
+	 * Magic number at the start of every snapshot.
+	 */
+	public static final int MAGIC = 0x53454958;
+
+	/**
+	 * Version of the file format.
+	 */
+	public static final int VERSION = 4;
+
+	/**
+	 * Size of the header in bytes.
+	 */
+	public static final int HEADER_SIZE = 4 * Integer.BYTES + 5 * Long.BYTES;
+
+	/**
+	 * Size of an entry of the postings directory in bytes.
+	 */
+	private static final int DIRECTORY_ENTRY_SIZE = Long.BYTES + Double.BYTES;
+
+	/**
+	 * Size of an entry of the skip table of a word in bytes.
+	 */
+	public static final int SKIP_ENTRY_SIZE = 2 * Integer.BYTES;
+
+	/**
+	 * Writes the index to a snapshot file. The snapshot is written to a temporary
+	 * file next to it first and then moved in its place, so a failed write leaves
+	 * the previous snapshot as it was.
+	 *
+	 * @param invertedIndex postings by word, sorted by word
+	 * @param locations     location IDs and counts
+	 * @param path          file to write
+	 * @throws IOException error for file
+	 */
+	public static void write(Map<String, PostingList> invertedIndex, LocationTableInterface locations, Path path)
+			throws IOException {
+		long[] postingsOffsets = new long[invertedIndex.size()];
+		double[] bounds = new double[invertedIndex.size()];
+		long locationsOffset;
+		long postingsOffset;
+		long wordsOffset;
+		long blocksOffset;
+		long directoryOffset;
+
+		Path temp = tempFile(path);
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+			CountingOutputStream counter = new CountingOutputStream(
+					new BufferedOutputStream(Channels.newOutputStream(channel)));
+			DataOutputStream out = new DataOutputStream(counter);
+			out.write(new byte[HEADER_SIZE]);
+
+			locationsOffset = counter.getCount();
+			for (int id = 0; id < locations.size(); id++) {
+				VByte.write(out, locations.getCount(id));
+				writeString(out, locations.getLocation(id));
+			}
+
+			postingsOffset = counter.getCount();
+			int word = 0;
+			for (PostingList postings : invertedIndex.values()) {
+				postingsOffsets[word] = counter.getCount();
+				bounds[word++] = writePostings(out, postings, locations);
+			}
+
+			wordsOffset = counter.getCount();
+			long[] blockOffsets = TermDictionary.write(out, invertedIndex.keySet(), invertedIndex.size());
+
+			blocksOffset = counter.getCount();
+			for (long offset : blockOffsets) {
+				out.writeLong(wordsOffset + offset);
+			}
+
+			directoryOffset = counter.getCount();
+			for (word = 0; word < postingsOffsets.length; word++) {
+				out.writeLong(postingsOffsets[word]);
+				out.writeDouble(bounds[word]);
+			}
+			out.flush();
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC).putInt(VERSION).putInt(locations.size()).putInt(invertedIndex.size());
+			header.putLong(locationsOffset).putLong(postingsOffset).putLong(wordsOffset).putLong(blocksOffset)
+					.putLong(directoryOffset);
+			header.flip();
+			channel.write(header, 0);
+			channel.force(true);
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(temp);
+			throw e;
+		}
+		replace(temp, path);
+	}
+
+	/**
+	 * Copies a snapshot file, replacing the copy at once like
+	 * {@link #write(Map, LocationTableInterface, Path)} does.
+	 *
+	 * @param source snapshot file to copy
+	 * @param path   file to write
+	 * @throws IOException error for file
+	 */
+	public static void copy(Path source, Path path) throws IOException {
+		Path temp = tempFile(path);
+		try {
+			Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(temp);
+			throw e;
+		}
+		replace(temp, path);
+	}
+
+	/**
+	 * Creates an empty temporary file in the directory of a snapshot file, so it
+	 * can be moved in its place without copying.
+	 *
+	 * @param path the snapshot file
+	 * @return the temporary file
+	 * @throws IOException error for file
+	 */
+	private static Path tempFile(Path path) throws IOException {
+		Path directory = path.toAbsolutePath().getParent();
+		String name = path.getFileName().toString();
+		while (true) {
+			// not createTempFile, which would leave the snapshot readable by its owner only
+			Path temp = directory.resolve(name + "." + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+			try {
+				return Files.createFile(temp);
+			} catch (FileAlreadyExistsException e) {
+				continue;
+			}
+		}
+	}
+
+	/**
+	 * Moves a written temporary file in place of a snapshot file, atomically
+	 * where the file system allows it.
+	 *
+	 * @param temp the temporary file
+	 * @param path the snapshot file
+	 * @throws IOException error for file
+	 */
+	private static void replace(Path temp, Path path) throws IOException {
+		try {
+			try {
+				Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(temp);
+			throw e;
+		}
+	}
+
+	/**
+	 * Reads a snapshot file into empty index structures.
+	 *
+	 * @param path          file to read
+	 * @param invertedIndex map to add postings by word to
+	 * @param locations     table to add locations and counts to
+	 * @throws IOException error for file, or if the file is not a snapshot
+	 */
+	public static void read(Path path, Map<String, PostingList> invertedIndex, LocationTableInterface locations)
+			throws IOException {
+		ByteBuffer buffer = map(path);
+		Header header = new Header(buffer);
+
+		buffer.position((int) header.locationsOffset);
+		for (int id = 0; id < header.locationCount; id++) {
+			int count = VByte.read(buffer);
+			locations.addCount(locations.add(readString(buffer)), count);
+		}
+
+		ByteBuffer postings = buffer.duplicate();
+		int word = 0;
+		for (String stemmedWord : header.dictionary(buffer)) {
+			postings.position((int) header.postingsOffset(buffer, word++));
+			invertedIndex.put(stemmedWord, readPostings(postings));
+		}
+	}
+
+	/**
+	 * Maps a snapshot file into memory.
+	 *
+	 * @param path file to map
+	 * @return read-only buffer over the whole file
+	 * @throws IOException error for file
+	 */
+	public static MappedByteBuffer map(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+	}
+
+	/**
+	 * Writes the postings of a word.
+	 *
+	 * @param out       output to write to
+	 * @param postings  postings to write
+	 * @param locations location word counts
+	 * @return score bound of the word
+	 * @throws IOException error for file
+	 */
+	private static double writePostings(DataOutputStream out, PostingList postings, LocationTableInterface locations)
+			throws IOException {
+		int blocks = skipEntries(postings.size());
+		int[] blockIds = new int[blocks];
+		int[] blockOffsets = new int[blocks];
+
+		// the entries go after the skip table, which needs their offsets
+		ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+		DataOutputStream entries = new DataOutputStream(bytesOut);
+		int index = 0;
+		int previous = 0;
+		double bound = 0;
+
+		for (PostingList.Cursor cursor = postings.cursor(); cursor.next(); index++) {
+			PositionList positions = cursor.positions();
+			if (index % PostingList.BLOCK_SIZE == 0) {
+				previous = 0;
+				if (blocks > 0) {
+					blockIds[index / PostingList.BLOCK_SIZE] = cursor.id();
+					blockOffsets[index / PostingList.BLOCK_SIZE] = entries.size();
+				}
+			}
+			VByte.write(entries, cursor.id() - previous);
+			previous = cursor.id();
+			bound = Math.max(bound, (double) cursor.count() / locations.getCount(cursor.id()));
+
+			int bytes = 0;
+			int last = 0;
+			PositionList.PositionIterator itr = positions.positionIterator();
+			while (itr.hasNext()) {
+				int position = itr.nextInt();
+				bytes += VByte.size(position - last);
+				last = position;
+			}
+
+			VByte.write(entries, positions.size());
+			VByte.write(entries, bytes);
+
+			last = 0;
+			itr = positions.positionIterator();
+			while (itr.hasNext()) {
+				int position = itr.nextInt();
+				VByte.write(entries, position - last);
+				last = position;
+			}
+		}
+
+		VByte.write(out, postings.size());
+		for (int block = 0; block < blocks; block++) {
+			out.writeInt(blockIds[block]);
+			out.writeInt(blockOffsets[block]);
+		}
+		bytesOut.writeTo(out);
+		return bound;
+	}
+
+	/**
+	 * Returns the number of entries in the skip table of a word. Words with a
+	 * single block have no skip table.
+	 *
+	 * @param size number of locations of the word
+	 * @return number of skip table entries
+	 */
+	public static int skipEntries(int size) {
+		return size > PostingList.BLOCK_SIZE ? (size + PostingList.BLOCK_SIZE - 1) / PostingList.BLOCK_SIZE : 0;
+	}
+
+	/**
+	 * Reads the postings of a word at the current position of the buffer.
+	 *
+	 * @param buffer buffer to read from
+	 * @return postings read
+	 */
+	private static PostingList readPostings(ByteBuffer buffer) {
+		PostingList postings = new PostingList();
+		int size = VByte.read(buffer);
+		buffer.position(buffer.position() + skipEntries(size) * SKIP_ENTRY_SIZE);
+		int id = 0;
+
+		for (int i = 0; i < size; i++) {
+			int gap = VByte.read(buffer);
+			id = i % PostingList.BLOCK_SIZE == 0 ? gap : id + gap;
+			int count = VByte.read(buffer);
+			VByte.read(buffer);
+
+			int position = 0;
+			for (int j = 0; j < count; j++) {
+				position += VByte.read(buffer);
+				postings.add(id, position);
+			}
+		}
+
+		return postings;
+	}
+
+	/**
+	 * Writes a string as its length followed by its UTF-8 bytes.
+	 *
+	 * @param out  output to write to
+	 * @param text string to write
+	 * @throws IOException error for file
+	 */
+	private static void writeString(DataOutputStream out, String text) throws IOException {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		VByte.write(out, bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Reads a string at the current position of the buffer.
+	 *
+	 * @param buffer buffer to read from
+	 * @return string read
+	 */
+	public static String readString(ByteBuffer buffer) {
+		byte[] bytes = new byte[VByte.read(buffer)];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Header of a snapshot file.
+	 */
+	public static class Header {
+		/** Number of locations */
+		public final int locationCount;
+		/** Number of words */
+		public final int wordCount;
+		/** Offset of the locations section */
+		public final long locationsOffset;
+		/** Offset of the postings section */
+		public final long postingsOffset;
+		/** Offset of the words section */
+		public final long wordsOffset;
+		/** Offset of the word block directory */
+		public final long blocksOffset;
+		/** Offset of the postings directory */
+		public final long directoryOffset;
+
+		/**
+		 * Reads and checks the header at the start of the buffer.
+		 *
+		 * @param buffer buffer over a snapshot file
+		 * @throws IOException if the buffer does not hold a snapshot
+		 */
+		public Header(ByteBuffer buffer) throws IOException {
+			if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+				throw new IOException("Not an index snapshot.");
+			}
+			if (buffer.getInt(4) != VERSION) {
+				throw new IOException("Unsupported index snapshot version: " + buffer.getInt(4));
+			}
+
+			locationCount = buffer.getInt(8);
+			wordCount = buffer.getInt(12);
+			locationsOffset = buffer.getLong(16);
+			postingsOffset = buffer.getLong(24);
+			wordsOffset = buffer.getLong(32);
+			blocksOffset = buffer.getLong(40);
+			directoryOffset = buffer.getLong(48);
+		}
+
+		/**
+		 * Returns the dictionary of the words in the snapshot.
+		 *
+		 * @param buffer buffer over the snapshot file
+		 * @return dictionary read in place from the buffer
+		 */
+		public TermDictionary dictionary(ByteBuffer buffer) {
+			return new TermDictionary(buffer, blocksOffset, wordCount);
+		}
+
+		/**
+		 * Returns the offset of the postings of a word.
+		 *
+		 * @param buffer buffer over the snapshot file
+		 * @param word   ordinal of the word
+		 * @return offset of the postings
+		 */
+		public long postingsOffset(ByteBuffer buffer, int word) {
+			return buffer.getLong((int) directoryOffset + word * DIRECTORY_ENTRY_SIZE);
+		}
+
+		/**
+		 * Returns the score bound of a word.
+		 *
+		 * @param buffer buffer over the snapshot file
+		 * @param word   ordinal of the word
+		 * @return score bound of the word
+		 */
+		public double scoreBound(ByteBuffer buffer, int word) {
+			return buffer.getDouble((int) directoryOffset + word * DIRECTORY_ENTRY_SIZE + Long.BYTES);
+		}
+	}
+
+	/**
+	 * Output stream that counts the bytes written through it.
+	 */
+	private static class CountingOutputStream extends FilterOutputStream {
+		/** Number of bytes written */
+		private long count;
+
+		/**
+		 * Constructor for counting output stream
+		 *
+		 * @param out stream to write to
+		 */
+		public CountingOutputStream(OutputStream out) {
+			super(out);
+			count = 0;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+
+		/**
+		 * Returns the number of bytes written.
+		 *
+		 * @return number of bytes written
+		 */
+		public long getCount() {
+			return count;
+		}
+	}
+}
@@ -3,10 +3,9 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.TreeSet;
 
@@ -15,23 +14,51 @@ import java.util.TreeSet;
  * 
  * @author isaiahjenkins
  */
-public class InvertedIndex {
+public class InvertedIndex extends WritableIndex {
 	/**
 	 * Tree map for inverted index.
 	 */
-	private final TreeMap<String, TreeMap<String, TreeSet<Integer>>> invertedIndex;
+	private final TreeMap<String, PostingList> invertedIndex;
 
 	/**
-	 * Tree map for files and counts.
+	 * Whether postings are compressed.
 	 */
-	private final TreeMap<String, Integer> filesAndCounts;
+	private final boolean compressed;
+
+	/**
+	 * Number of changes made to the index, used to tell when cached score bounds
+	 * are out of date.
+	 */
+	private int version;
 
 	/**
 	 * Constructor for Inverted Index class.
 	 */
 	public InvertedIndex() {
+		this(false);
+	}
+
+	/**
+	 * Constructor for Inverted Index class.
+	 * 
+	 * @param compressed whether to compress postings
+	 * @see PostingList
+	 */
+	public InvertedIndex(boolean compressed) {
+		this(new LocationTable(), compressed);
+	}
+
+	/**
+	 * Constructor for an index that shares a location table.
+	 * 
+	 * @param locations  location IDs and counts
+	 * @param compressed whether to compress postings
+	 */
+	protected InvertedIndex(LocationTableInterface locations, boolean compressed) {
+		super(locations);
 		invertedIndex = new TreeMap<>();
-		filesAndCounts = new TreeMap<>();
+		this.compressed = compressed;
+		this.version = 0;
 	}
 
 	/**
@@ -46,43 +73,58 @@ public class InvertedIndex {
 	 */
 	public void add(String word, String location, int position) throws IOException {
 		// build index
-		invertedIndex.putIfAbsent(word, new TreeMap<String, TreeSet<Integer>>());
-		invertedIndex.get(word).putIfAbsent(location, new TreeSet<Integer>());
-		boolean success = invertedIndex.get(word).get(location).add(position);
+		version++;
+		int id = locations.add(location);
+		invertedIndex.putIfAbsent(word, new PostingList(compressed));
+		boolean success = invertedIndex.get(word).add(id, position);
 
 		// build counts, if position was added, increase count
 		if (success) {
-			int currentCountOfFile = filesAndCounts.getOrDefault(location, 0);
-			filesAndCounts.put(location, currentCountOfFile + 1);
+			locations.addCount(id, 1);
 		}
 	}
 
 	/**
 	 * Add all method to add all the positions and counts to inverted index.
+	 * Postings of the local index are moved rather than copied where possible,
+	 * so the local index must not be used afterwards.
 	 * 
 	 * @param localIndex local index when used in multithreaded builder index
 	 */
 	public void addAll(InvertedIndex localIndex) {
-		// merge positions
-		for (String word : localIndex.invertedIndex.keySet()) {
-			if (invertedIndex.containsKey(word)) {
-				for (String location : localIndex.invertedIndex.get(word).keySet()) {
-					if (invertedIndex.get(word).containsKey(location)) {
-						invertedIndex.get(word).get(location).addAll(localIndex.invertedIndex.get(word).get(location));
-					} else {
-						invertedIndex.get(word).put(location, localIndex.invertedIndex.get(word).get(location));
-					}
-				}
-			} else {
-				invertedIndex.put(word, localIndex.invertedIndex.get(word));
+		int[] remap = addLocations(localIndex);
+		addPostings(localIndex, localIndex.invertedIndex.keySet(), remap);
+	}
+
+	/**
+	 * Merges the positions of some words of another index, whose locations have
+	 * already been merged with {@link #addLocations(InvertedIndex)}. Postings of
+	 * the other index are moved rather than copied where possible.
+	 * 
+	 * @param localIndex index to merge
+	 * @param words      words of the other index to merge
+	 * @param remap      our location ID for every location ID of the other index
+	 */
+	protected void addPostings(InvertedIndex localIndex, Collection<String> words, int[] remap) {
+		version++;
+		for (String word : words) {
+			PostingList postings = invertedIndex.get(word);
+			if (postings == null) {
+				postings = new PostingList(compressed);
+				invertedIndex.put(word, postings);
 			}
+			postings.addAll(localIndex.invertedIndex.get(word), remap);
 		}
+	}
 
-		// merge counts
-		for (String location : localIndex.filesAndCounts.keySet()) {
-			int currentCount = filesAndCounts.getOrDefault(location, 0);
-			filesAndCounts.put(location, currentCount + localIndex.filesAndCounts.get(location));
-		}
+	/**
+	 * Returns a read-only view of the postings by word, sorted by word. Changes
+	 * to the index are seen through the view.
+	 * 
+	 * @return view of the postings
+	 */
+	protected SortedMap<String, PostingList> postings() {
+		return Collections.unmodifiableSortedMap(invertedIndex);
 	}
 
 	/**
@@ -94,6 +136,18 @@ public class InvertedIndex {
 		return Collections.unmodifiableSet(invertedIndex.keySet());
 	}
 
+	/**
+	 * Returns the words that start with a prefix, found with a range lookup so
+	 * the cost depends on the number of matching words instead of all words.
+	 * 
+	 * @param prefix the prefix
+	 * @return view of the postings of the words starting with the prefix
+	 */
+	private SortedMap<String, PostingList> prefixMap(String prefix) {
+		String end = TermDictionary.prefixEnd(prefix);
+		return end == null ? invertedIndex.tailMap(prefix) : invertedIndex.subMap(prefix, end);
+	}
+
 	/**
 	 * Returns unmodifiable positions of words in file.
 	 * 
@@ -101,8 +155,9 @@ public class InvertedIndex {
 	 * @return unmodifiable keySet of locations for stemmed word.
 	 */
 	public Set<String> getLocations(String word) {
-		if (contains(word)) {
-			return Collections.unmodifiableSet(invertedIndex.get(word).keySet());
+		PostingList postings = invertedIndex.get(word);
+		if (postings != null) {
+			return Collections.unmodifiableSet(asLocationMap(postings).keySet());
 		}
 		return Collections.emptySet();
 	}
@@ -115,12 +170,8 @@ public class InvertedIndex {
 	 */
 	public Set<String> getLocationsPartial(String stemmedWord) {
 		Set<String> allFiles = new TreeSet<>();
-		for (String word : invertedIndex.keySet()) {
-			if (word.startsWith(stemmedWord)) {
-				if (contains(word)) {
-					allFiles.addAll(invertedIndex.get(word).keySet());
-				}
-			}
+		for (PostingList postings : prefixMap(stemmedWord).values()) {
+			allFiles.addAll(asLocationMap(postings).keySet());
 		}
 		return Collections.unmodifiableSet(allFiles);
 	}
@@ -133,8 +184,11 @@ public class InvertedIndex {
 	 * @return unmodifiable set of positions of words in file.
 	 */
 	public Set<Integer> getPositions(String stemmedWord, String location) {
-		if (contains(stemmedWord, location)) {
-			return Collections.unmodifiableSet(invertedIndex.get(stemmedWord).get(location));
+		PostingList postings = invertedIndex.get(stemmedWord);
+		int id = locations.getId(location);
+		PositionList positions = postings != null && id >= 0 ? postings.get(id) : null;
+		if (positions != null) {
+			return Collections.unmodifiableSet(positions);
 		}
 		return Collections.emptySet();
 	}
@@ -157,12 +211,9 @@ public class InvertedIndex {
 	 * @return true if stemmed word and location is in index.
 	 */
 	public boolean contains(String word, String location) {
-		if (contains(word)) {
-			if (invertedIndex.get(word).containsKey(location)) {
-				return true;
-			}
-		}
-		return false;
+		PostingList postings = invertedIndex.get(word);
+		int id = locations.getId(location);
+		return postings != null && id >= 0 && postings.contains(id);
 	}
 
 	/**
@@ -174,45 +225,44 @@ public class InvertedIndex {
 	 * @return true if stemmed word, location, and position is in index.
 	 */
 	public boolean contains(String word, String location, int position) {
-		if (contains(word, location)) {
-			if (invertedIndex.get(word).get(location).contains(position)) {
-				return true;
-			}
-		}
-		return false;
+		PostingList postings = invertedIndex.get(word);
+		int id = locations.getId(location);
+		return postings != null && id >= 0 && postings.contains(id, position);
 	}
 
 	/**
-	 * Returns unmodifiable int of counts for a file.
+	 * Creates Json for the inverted index.
 	 * 
-	 * @param file current file
-	 * @return unmodifiable int of counts for a file.
+	 * @param valueOfFlagIndex the path for index
+	 * @throws IOException error for file
 	 */
-	public int getCounts(String file) {
-		if (filesAndCounts.containsKey(file)) {
-			return filesAndCounts.get(file);
-		}
-		return 0;
+	public void createPrettyJson(Path valueOfFlagIndex) throws IOException {
+		SimpleJsonWriter.asInvertedIndex(asLocationView(invertedIndex), valueOfFlagIndex);
 	}
 
 	/**
-	 * Creates Json for the inverted index.
+	 * Saves the index to a binary snapshot file.
 	 * 
-	 * @param valueOfFlagIndex the path for index
+	 * @param path the path for the snapshot
 	 * @throws IOException error for file
+	 * @see IndexSnapshot
 	 */
-	public void createPrettyJson(Path valueOfFlagIndex) throws IOException {
-		SimpleJsonWriter.asInvertedIndex(invertedIndex, valueOfFlagIndex);
+	public void save(Path path) throws IOException {
+		IndexSnapshot.write(invertedIndex, locations, path);
 	}
 
 	/**
-	 * Creates Json for words counts.
+	 * Reads a binary snapshot file into a new index.
 	 * 
-	 * @param valueOfFlagCounts the path for counts
+	 * @param path the path for the snapshot
+	 * @return index of the snapshot
 	 * @throws IOException error for file
+	 * @see IndexSnapshot
 	 */
-	public void createCountsJson(Path valueOfFlagCounts) throws IOException {
-		SimpleJsonWriter.asObject(filesAndCounts, valueOfFlagCounts);
+	protected static InvertedIndex read(Path path) throws IOException {
+		InvertedIndex snapshot = new InvertedIndex();
+		IndexSnapshot.read(path, snapshot.invertedIndex, snapshot.locations);
+		return snapshot;
 	}
 
 	/*
@@ -221,179 +271,56 @@ public class InvertedIndex {
 	 * @return invertedIndex toString output of inverted index.
 	 */
 	public String toString() {
-		return invertedIndex.toString();
+		return asLocationView(invertedIndex).toString();
 	}
 
 	/**
-	 * Partial search for index by line
+	 * Returns cursors over the postings of the words matched by the queries, one
+	 * for every query that matches a word.
 	 * 
-	 * @param queries stemmedLines as list
-	 * @return list of query data for partial search
+	 * @param queries   stemmed query words
+	 * @param exactFlag boolean for exact or partial query
+	 * @return cursors over the postings of the matched words, not started
 	 */
-	public List<QueryData> partialSearch(Collection<String> queries) {
-		ArrayList<QueryData> results = new ArrayList<>();
-		Map<String, QueryData> lookup = new HashMap<>();
+	protected List<PostingCursor> cursors(Collection<String> queries, boolean exactFlag) {
+		ArrayList<PostingCursor> cursors = new ArrayList<>();
 
 		for (String word : queries) {
-			for (String wordStems : invertedIndex.tailMap(word).keySet()) {
-				if (wordStems.startsWith(word)) {
-					searchHelper(wordStems, results, lookup);
-				} else {
-					break;
+			if (exactFlag) {
+				PostingList postings = invertedIndex.get(word);
+				if (postings != null) {
+					cursors.add(cursor(postings));
+				}
+			} else {
+				for (PostingList postings : prefixMap(word).values()) {
+					cursors.add(cursor(postings));
 				}
 			}
 		}
 
-		Collections.sort(results);
-		return results;
-	}
-
-	/**
-	 * Exact search for index by line
-	 * 
-	 * @param queries stemmedLines as list
-	 * @return list of query data for exact search
-	 */
-	public List<QueryData> exactSearch(Collection<String> queries) {
-		ArrayList<QueryData> results = new ArrayList<>();
-		Map<String, QueryData> lookup = new HashMap<>();
-
-		for (String word : queries) {
-			if (invertedIndex.containsKey(word)) {
-				searchHelper(word, results, lookup);
-			}
-		}
-
-		Collections.sort(results);
-		return results;
+		return cursors;
 	}
 
 	/**
-	 * Search helper for exact and partial search
+	 * Returns a cursor over the postings of a word.
 	 * 
-	 * @param word    current word or word stem in query
-	 * @param results query data for current query
-	 * @param lookup  map to update current query data
+	 * @param word stemmed word
+	 * @return cursor over the postings, not started, or {@code null} if the word
+	 *         is not in the index
 	 */
-	private void searchHelper(String word, ArrayList<QueryData> results, Map<String, QueryData> lookup) {
-		for (String location : invertedIndex.get(word).keySet()) {
-			if (!lookup.containsKey(location)) {
-				QueryData data = new QueryData(location);
-				results.add(data);
-				lookup.put(location, data);
-			}
-
-			lookup.get(location).update(word);
-		}
+	protected PostingCursor cursor(String word) {
+		PostingList postings = invertedIndex.get(word);
+		return postings == null ? null : cursor(postings);
 	}
 
 	/**
-	 * Search for index by line
+	 * Returns a cursor over postings with an up to date score bound.
 	 * 
-	 * @param queries   stemmedLines as list
-	 * @param exactFlag boolean for exact or partial query
-	 * @return list of query data for exact or partial search
-	 */
-	public List<QueryData> search(Collection<String> queries, boolean exactFlag) {
-		return exactFlag ? exactSearch(queries) : partialSearch(queries);
-	}
-
-	/**
-	 * Query class for queried searches
+	 * @param postings postings of a word
+	 * @return cursor over the postings
 	 */
-	public class QueryData implements Comparable<QueryData> {
-
-		/**
-		 * location of queried search
-		 */
-		private final String where;
-		/**
-		 * count of queried search
-		 */
-		private int count;
-		/**
-		 * score of queried search
-		 */
-		private double score;
-
-		/**
-		 * Constructor for query class
-		 * 
-		 * @param location file to query
-		 */
-		public QueryData(String location) {
-			this.count = 0;
-			this.score = 0.00;
-			this.where = location;
-		}
-
-		/**
-		 * Return location of query search
-		 * 
-		 * @return location of query search
-		 */
-		public String getWhere() {
-			return this.where;
-		}
-
-		/**
-		 * Returns total matches of total matches
-		 * 
-		 * @return totals matches
-		 */
-		public int getCount() {
-			return this.count;
-		}
-
-		/**
-		 * Gets score
-		 * 
-		 * @return score
-		 */
-		public double getScore() {
-			return this.score;
-		}
-
-		/**
-		 * Updates the query data for count and score
-		 * 
-		 * @param word current word to query
-		 */
-		private void update(String word) {
-			this.count += invertedIndex.get(word).get(where).size();
-			this.score = (double) this.count / filesAndCounts.get(where);
-		}
-
-		/**
-		 * Compare to function that compares and orders query data.
-		 * 
-		 * @param other compares values of query class
-		 * @return compare value to order data
-		 */
-		@Override
-		public int compareTo(QueryData other) {
-			int comparedScore = Double.compare(getScore(), other.getScore());
-			int comparedCount = Integer.compare(getCount(), other.getCount());
-			int comparedWhere = getWhere().compareTo(other.getWhere());
-
-			if (comparedScore != 0) {
-				if (comparedScore > 0) {
-					return -1;
-				} else if (comparedScore < 0) {
-					return 1;
-				}
-
-			} else {
-				if (comparedCount != 0) {
-					if (comparedCount > 0) {
-						return -1;
-					} else if (comparedCount < 0) {
-						return 1;
-					}
-				}
-				return comparedWhere;
-			}
-			return comparedWhere;
-		}
+	private PostingCursor cursor(PostingList postings) {
+		postings.updateBound(locations, version);
+		return postings.cursor();
 	}
-}
\ No newline at end of file
+}
@@ -17,7 +17,7 @@ public class InvertedIndexBuilder {
 	/**
 	 * Index to build index instance.
 	 */
-	private final InvertedIndex index;
+	private final WritableIndex index;
 
 	/**
 	 * Final constant default to help create stemmer instances.
@@ -29,7 +29,7 @@ public class InvertedIndexBuilder {
 	 * 
 	 * @param index to build invert
 	 */
-	public InvertedIndexBuilder(InvertedIndex index) {
+	public InvertedIndexBuilder(WritableIndex index) {
 		this.index = index;
 	}
 
@@ -49,7 +49,7 @@ public class InvertedIndexBuilder {
 	 * @param index    inverted index instance
 	 * @throws IOException exception for file error
 	 */
-	public static void addFile(Path location, InvertedIndex index) throws IOException {
+	public static void addFile(Path location, WritableIndex index) throws IOException {
 		Stemmer stemmer = new SnowballStemmer(DEFAULT);
 		int position = 1;
 		try (BufferedReader reader = Files.newBufferedReader(location, StandardCharsets.UTF_8);) {
@@ -73,7 +73,7 @@ public class InvertedIndexBuilder {
 	 * @param index             inverted index instance
 	 * @throws IOException exception for file error
 	 */
-	public static void addFile(String urlLocationString, String html, InvertedIndex index) throws IOException {
+	public static void addFile(String urlLocationString, String html, WritableIndex index) throws IOException {
 		Stemmer stemmer = new SnowballStemmer(DEFAULT);
 		int position = 1;
 
@@ -0,0 +1,120 @@
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Maps every location in an index to a dense int ID, and stores the word count
+ * of each location by ID. Each location string is stored once here instead of
+ * once per word that appears in it.
+ *
+ * @author isaiahjenkins
+ */
+public class LocationTable implements LocationTableInterface {
+
+	/**
+	 * Initial capacity of the location and count arrays.
+	 */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/**
+	 * Map from location to ID.
+	 */
+	private final HashMap<String, Integer> ids;
+
+	/**
+	 * Locations by ID.
+	 */
+	private String[] locations;
+
+	/**
+	 * Word counts by ID.
+	 */
+	private int[] counts;
+
+	/**
+	 * Number of locations.
+	 */
+	private int size;
+
+	/**
+	 * Constructor for an empty location table.
+	 */
+	public LocationTable() {
+		ids = new HashMap<>();
+		locations = new String[INITIAL_CAPACITY];
+		counts = new int[INITIAL_CAPACITY];
+		size = 0;
+	}
+
+	/**
+	 * Returns the ID of the location, adding the location if it is not in the
+	 * table yet. New locations are given the next unused ID.
+	 *
+	 * @param location location to add
+	 * @return ID of the location
+	 */
+	public int add(String location) {
+		Integer id = ids.get(location);
+		if (id != null) {
+			return id;
+		}
+
+		if (size == locations.length) {
+			locations = Arrays.copyOf(locations, size * 2);
+			counts = Arrays.copyOf(counts, size * 2);
+		}
+
+		locations[size] = location;
+		ids.put(location, size);
+		return size++;
+	}
+
+	/**
+	 * Returns the ID of the location.
+	 *
+	 * @param location location to look up
+	 * @return ID of the location, or -1 if the location is not in the table
+	 */
+	public int getId(String location) {
+		Integer id = ids.get(location);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Returns the location with the given ID.
+	 *
+	 * @param id location ID
+	 * @return the location
+	 */
+	public String getLocation(int id) {
+		return locations[id];
+	}
+
+	/**
+	 * Returns the word count of the location with the given ID.
+	 *
+	 * @param id location ID
+	 * @return word count of the location
+	 */
+	public int getCount(int id) {
+		return counts[id];
+	}
+
+	/**
+	 * Adds to the word count of the location with the given ID.
+	 *
+	 * @param id     location ID
+	 * @param amount number of words to add
+	 */
+	public void addCount(int id, int amount) {
+		counts[id] += amount;
+	}
+
+	/**
+	 * Returns the number of locations.
+	 *
+	 * @return number of locations
+	 */
+	public int size() {
+		return size;
+	}
+}
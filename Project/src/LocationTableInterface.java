@@ -0,0 +1,56 @@
+/**
+ * Interface for Location Table. Maps every location in an index to a dense int
+ * ID, and stores the word count of each location by ID.
+ *
+ * @author isaiahjenkins
+ */
+interface LocationTableInterface {
+
+	/**
+	 * Returns the ID of the location, adding the location if it is not in the
+	 * table yet. New locations are given the next unused ID.
+	 *
+	 * @param location location to add
+	 * @return ID of the location
+	 */
+	public abstract int add(String location);
+
+	/**
+	 * Returns the ID of the location.
+	 *
+	 * @param location location to look up
+	 * @return ID of the location, or -1 if the location is not in the table
+	 */
+	public abstract int getId(String location);
+
+	/**
+	 * Returns the location with the given ID.
+	 *
+	 * @param id location ID
+	 * @return the location
+	 */
+	public abstract String getLocation(int id);
+
+	/**
+	 * Returns the word count of the location with the given ID.
+	 *
+	 * @param id location ID
+	 * @return word count of the location
+	 */
+	public abstract int getCount(int id);
+
+	/**
+	 * Adds to the word count of the location with the given ID.
+	 *
+	 * @param id     location ID
+	 * @param amount number of words to add
+	 */
+	public abstract void addCount(int id, int amount);
+
+	/**
+	 * Returns the number of locations.
+	 *
+	 * @return number of locations
+	 */
+	public abstract int size();
+}
@@ -0,0 +1,469 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Read-only inverted index served straight from a memory-mapped
+ * {@link IndexSnapshot} file. Only the locations are read into the heap; words
+ * and postings are read from the mapped file on every call, so several
+ * processes serving the same file share the operating system page cache.
+ * Nothing can be added to it, so it is a {@link SearchIndex} and not an
+ * {@link InvertedIndex}.
+ *
+ * @author isaiahjenkins
+ */
+public class MappedInvertedIndex extends SearchIndex {
+
+	/**
+	 * The mapped snapshot file.
+	 */
+	private final ByteBuffer buffer;
+
+	/**
+	 * Header of the snapshot file.
+	 */
+	private final IndexSnapshot.Header header;
+
+	/**
+	 * Dictionary of the words, read in place from the mapped file.
+	 */
+	private final TermDictionary dictionary;
+
+	/**
+	 * The snapshot file.
+	 */
+	private final Path path;
+
+	/**
+	 * Constructor for a mapped index.
+	 *
+	 * @param path snapshot file to map
+	 * @throws IOException error for file, or if the file is not a snapshot
+	 */
+	public MappedInvertedIndex(Path path) throws IOException {
+		this(path, IndexSnapshot.map(path));
+	}
+
+	/**
+	 * Constructor for a mapped index.
+	 *
+	 * @param path   snapshot file
+	 * @param buffer the mapped snapshot file
+	 * @throws IOException if the file is not a snapshot
+	 */
+	private MappedInvertedIndex(Path path, ByteBuffer buffer) throws IOException {
+		super(new LocationTable());
+		this.path = path;
+		this.buffer = buffer;
+		this.header = new IndexSnapshot.Header(buffer);
+		this.dictionary = header.dictionary(buffer);
+
+		ByteBuffer reader = buffer.duplicate();
+		reader.position((int) header.locationsOffset);
+		for (int id = 0; id < header.locationCount; id++) {
+			int count = VByte.read(reader);
+			locations.addCount(locations.add(IndexSnapshot.readString(reader)), count);
+		}
+	}
+
+	/**
+	 * Copies the mapped snapshot file.
+	 *
+	 * @param output the path for the snapshot
+	 * @throws IOException error for file
+	 */
+	@Override
+	public void save(Path output) throws IOException {
+		if (!Files.exists(output) || !Files.isSameFile(path, output)) {
+			IndexSnapshot.copy(path, output);
+		}
+	}
+
+	@Override
+	public Set<String> getWords() {
+		return new WordSet();
+	}
+
+	@Override
+	public Set<String> getLocations(String word) {
+		int found = dictionary.find(word);
+		if (found < 0) {
+			return Collections.emptySet();
+		}
+		return Collections.unmodifiableSet(asLocationMap(found).keySet());
+	}
+
+	@Override
+	public Set<String> getLocationsPartial(String stemmedWord) {
+		Set<String> allFiles = new TreeSet<>();
+		int[] range = dictionary.prefixRange(stemmedWord);
+		for (int word = range[0]; word < range[1]; word++) {
+			allFiles.addAll(asLocationMap(word).keySet());
+		}
+		return Collections.unmodifiableSet(allFiles);
+	}
+
+	@Override
+	public Set<Integer> getPositions(String stemmedWord, String location) {
+		PositionList positions = findPositions(stemmedWord, location);
+		if (positions == null) {
+			return Collections.emptySet();
+		}
+		return Collections.unmodifiableSet(positions);
+	}
+
+	@Override
+	public boolean contains(String word) {
+		return dictionary.find(word) >= 0;
+	}
+
+	@Override
+	public boolean contains(String word, String location) {
+		return findPositions(word, location) != null;
+	}
+
+	@Override
+	public boolean contains(String word, String location, int position) {
+		PositionList positions = findPositions(word, location);
+		return positions != null && positions.contains(position);
+	}
+
+	@Override
+	public void createPrettyJson(Path valueOfFlagIndex) throws IOException {
+		SimpleJsonWriter.asInvertedIndex(new LocationView(), valueOfFlagIndex);
+	}
+
+	@Override
+	public String toString() {
+		return new LocationView().toString();
+	}
+
+	@Override
+	protected List<PostingCursor> cursors(Collection<String> queries, boolean exactFlag) {
+		ArrayList<PostingCursor> cursors = new ArrayList<>();
+
+		for (String query : queries) {
+			if (exactFlag) {
+				int word = dictionary.find(query);
+				if (word >= 0) {
+					cursors.add(new MappedCursor(word));
+				}
+			} else {
+				int[] range = dictionary.prefixRange(query);
+				for (int word = range[0]; word < range[1]; word++) {
+					cursors.add(new MappedCursor(word));
+				}
+			}
+		}
+
+		return cursors;
+	}
+
+	@Override
+	protected PostingCursor cursor(String stemmedWord) {
+		int word = dictionary.find(stemmedWord);
+		return word < 0 ? null : new MappedCursor(word);
+	}
+
+	/**
+	 * Returns a reader positioned at the postings of a word.
+	 *
+	 * @param word ordinal of the word
+	 * @return buffer positioned at the postings
+	 */
+	private ByteBuffer postings(int word) {
+		ByteBuffer reader = buffer.duplicate();
+		reader.position((int) header.postingsOffset(buffer, word));
+		return reader;
+	}
+
+	/**
+	 * Decodes the positions of a word in a location.
+	 *
+	 * @param word     word to look for
+	 * @param location location to look for
+	 * @return positions, or {@code null} if the word is not in the location
+	 */
+	private PositionList findPositions(String word, String location) {
+		int found = dictionary.find(word);
+		int target = locations.getId(location);
+		if (found < 0 || target < 0) {
+			return null;
+		}
+
+		MappedCursor cursor = new MappedCursor(found);
+		return cursor.advance(target) && cursor.id() == target ? cursor.positions() : null;
+	}
+
+	/**
+	 * Decodes positions at the current position of the reader.
+	 *
+	 * @param reader buffer positioned at the positions
+	 * @param count  number of positions
+	 * @return positions
+	 */
+	private static PositionList readPositions(ByteBuffer reader, int count) {
+		PositionList positions = new PositionList();
+		int position = 0;
+		for (int j = 0; j < count; j++) {
+			position += VByte.read(reader);
+			positions.add(position);
+		}
+		return positions;
+	}
+
+	/**
+	 * Decodes the postings of a word keyed and sorted by location.
+	 *
+	 * @param word ordinal of the word
+	 * @return map of locations to positions
+	 */
+	private TreeMap<String, PositionList> asLocationMap(int word) {
+		TreeMap<String, PositionList> map = new TreeMap<>();
+		for (MappedCursor cursor = new MappedCursor(word); cursor.next();) {
+			map.put(locations.getLocation(cursor.id()), cursor.positions());
+		}
+		return map;
+	}
+
+	/**
+	 * Cursor over the postings of a word in the mapped file that reads the
+	 * location IDs and position counts and skips over the positions. Advancing
+	 * gallops over the skip table of the word to the block holding the target, so
+	 * intersections skip whole blocks of a long list like they do in memory.
+	 */
+	private class MappedCursor implements PostingCursor {
+		/** Reader positioned after the current location */
+		private final ByteBuffer reader;
+
+		/** Number of locations of the word */
+		private final int size;
+
+		/** Offset of the skip table */
+		private final int table;
+
+		/** Number of entries in the skip table */
+		private final int blocks;
+
+		/** Offset of the first location, after the skip table */
+		private final int entries;
+
+		/** Index of the current location, -1 before the first */
+		private int index;
+
+		/** Current location ID */
+		private int id;
+
+		/** Number of positions in the current location */
+		private int count;
+
+		/** Offset of the positions of the current location */
+		private int positionsOffset;
+
+		/** Score bound of the word */
+		private final double bound;
+
+		/**
+		 * Constructor for mapped cursor
+		 *
+		 * @param word ordinal of the word
+		 */
+		public MappedCursor(int word) {
+			bound = header.scoreBound(buffer, word);
+			reader = postings(word);
+			size = VByte.read(reader);
+			table = reader.position();
+			blocks = IndexSnapshot.skipEntries(size);
+			entries = table + blocks * IndexSnapshot.SKIP_ENTRY_SIZE;
+			reader.position(entries);
+			index = -1;
+			id = 0;
+		}
+
+		@Override
+		public boolean next() {
+			if (index + 1 >= size) {
+				index = size;
+				count = 0;
+				return false;
+			}
+
+			index++;
+			int gap = VByte.read(reader);
+			id = index % PostingList.BLOCK_SIZE == 0 ? gap : id + gap;
+			count = VByte.read(reader);
+			int bytes = VByte.read(reader);
+			positionsOffset = reader.position();
+			reader.position(positionsOffset + bytes);
+			return true;
+		}
+
+		@Override
+		public boolean advance(int target) {
+			if (index >= 0 && index < size && id >= target) {
+				return true;
+			}
+
+			if (blocks > 0) {
+				// the last block starting at or before the target
+				int from = Math.min(Math.max(index, 0) / PostingList.BLOCK_SIZE, blocks);
+				int block = Math.max(gallop(from, target + 1) - 1, 0);
+
+				if (block * PostingList.BLOCK_SIZE > index) {
+					index = block * PostingList.BLOCK_SIZE - 1;
+					reader.position(entries + buffer.getInt(table + block * IndexSnapshot.SKIP_ENTRY_SIZE + Integer.BYTES));
+				}
+			}
+
+			while (next()) {
+				if (id >= target) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Returns the first block at or after a block whose first location ID is
+		 * not less than the target, like {@link PostingList#gallop(int[], int, int, int)}
+		 * over the skip table.
+		 *
+		 * @param from   block to start from
+		 * @param target location ID to look for
+		 * @return the first such block, or the number of blocks if there is none
+		 */
+		private int gallop(int from, int target) {
+			if (from >= blocks || blockId(from) >= target) {
+				return from;
+			}
+
+			// blockId(low) is below the target, blockId(high) is not or high is blocks
+			int low = from;
+			int step = 1;
+			int high = from + 1;
+			while (high < blocks && blockId(high) < target) {
+				low = high;
+				step <<= 1;
+				high = Math.min(from + step, blocks);
+			}
+
+			low++;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (blockId(middle) < target) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+			return low;
+		}
+
+		/**
+		 * Returns the first location ID of a block.
+		 *
+		 * @param block the block
+		 * @return first location ID of the block
+		 */
+		private int blockId(int block) {
+			return buffer.getInt(table + block * IndexSnapshot.SKIP_ENTRY_SIZE);
+		}
+
+		@Override
+		public int id() {
+			return id;
+		}
+
+		@Override
+		public int count() {
+			return count;
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public double bound() {
+			return bound;
+		}
+
+		@Override
+		public PositionList positions() {
+			ByteBuffer positions = buffer.duplicate();
+			positions.position(positionsOffset);
+			return readPositions(positions, count);
+		}
+	}
+
+	/**
+	 * Read-only set view of the words in the mapped file.
+	 */
+	private class WordSet extends AbstractSet<String> {
+		@Override
+		public Iterator<String> iterator() {
+			return dictionary.iterator();
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return o instanceof String && dictionary.find((String) o) >= 0;
+		}
+
+		@Override
+		public int size() {
+			return header.wordCount;
+		}
+	}
+
+	/**
+	 * Read-only view of the mapped file with locations resolved to strings, used
+	 * to write JSON.
+	 */
+	private class LocationView extends AbstractMap<String, Map<String, PositionList>> {
+		@Override
+		public Set<Entry<String, Map<String, PositionList>>> entrySet() {
+			return new AbstractSet<Entry<String, Map<String, PositionList>>>() {
+				@Override
+				public Iterator<Entry<String, Map<String, PositionList>>> iterator() {
+					return new Iterator<Entry<String, Map<String, PositionList>>>() {
+						/** Iterator over the sorted words */
+						private final Iterator<String> words = dictionary.iterator();
+
+						/** Ordinal of the next word */
+						private int word = 0;
+
+						@Override
+						public boolean hasNext() {
+							return words.hasNext();
+						}
+
+						@Override
+						public Entry<String, Map<String, PositionList>> next() {
+							String key = words.next();
+							return Map.entry(key, asLocationMap(word++));
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return header.wordCount;
+				}
+			};
+		}
+	}
+}
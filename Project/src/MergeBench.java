@@ -0,0 +1,107 @@
+import java.io.IOException;
+
+/**
+ * Checks that merging a local index with {@link InvertedIndex#addAll} costs
+ * time by the number of terms merged, not by the number of positions, since
+ * the postings of new locations are moved instead of inserted one by one.
+ * Prints the time of a merge for a few shapes of local index, and exits with
+ * status 1 if the merged index is wrong or the time grows with the positions.
+ *
+ * Run with {@code java MergeBench} for plain postings, or
+ * {@code java MergeBench -compress} for compressed ones, which still encode
+ * every position and are only timed.
+ *
+ * @author isaiahjenkins
+ */
+public class MergeBench {
+
+	/**
+	 * Number of local indexes merged for each shape
+	 */
+	private static final int ROUNDS = 200;
+
+	/**
+	 * Most times slower a merge of 100 times the positions may be
+	 */
+	private static final double MAX_POSITIONS_FACTOR = 3;
+
+	/**
+	 * Builds local indexes of one file each and times merging them into an index
+	 * that already has half of their words.
+	 *
+	 * @param compressed whether the target index compresses postings
+	 * @param terms      number of terms in each local index
+	 * @param positions  number of positions of each term
+	 * @param check      whether to check the merged index against one built
+	 *                   directly
+	 * @return average time of a merge in nanoseconds
+	 * @throws IOException if the index cannot be built
+	 */
+	private static long time(boolean compressed, int terms, int positions, boolean check) throws IOException {
+		InvertedIndex target = new InvertedIndex(compressed);
+		InvertedIndex expected = new InvertedIndex(compressed);
+		for (int term = 0; term < terms; term += 2) {
+			target.add("w" + term, "seed", 1);
+			expected.add("w" + term, "seed", 1);
+		}
+
+		InvertedIndex[] locals = new InvertedIndex[ROUNDS];
+		for (int round = 0; round < ROUNDS; round++) {
+			locals[round] = new InvertedIndex();
+			int position = 1;
+			for (int term = 0; term < terms; term++) {
+				for (int i = 0; i < positions; i++) {
+					locals[round].add("w" + term, "loc" + round, position);
+					if (check) {
+						expected.add("w" + term, "loc" + round, position);
+					}
+					position++;
+				}
+			}
+		}
+
+		System.gc();
+		long start = System.nanoTime();
+		for (InvertedIndex local : locals) {
+			target.addAll(local);
+		}
+		long elapsed = (System.nanoTime() - start) / ROUNDS;
+
+		if (check && !target.toString().equals(expected.toString())) {
+			throw new IllegalStateException("Merged index differs for " + terms + " x " + positions);
+		}
+		return elapsed;
+	}
+
+	/**
+	 * Times merges of several shapes and checks the result.
+	 *
+	 * @param args "-compress" to merge into a compressed index
+	 * @throws IOException if an index cannot be built
+	 */
+	public static void main(String[] args) throws IOException {
+		boolean compressed = args.length > 0 && args[0].equals("-compress");
+		int[][] shapes = { { 1000, 1 }, { 1000, 10 }, { 1000, 100 }, { 100, 1000 } };
+		long[] times = new long[shapes.length];
+
+		// the first rounds warm up the JIT, and the first checks the small shapes
+		for (int warm = 0; warm < 3; warm++) {
+			for (int i = 0; i < shapes.length; i++) {
+				times[i] = time(compressed, shapes[i][0], shapes[i][1], warm == 0 && shapes[i][1] <= 10);
+			}
+		}
+
+		System.out.printf("%s postings, %d merges of one file each:%n", compressed ? "Compressed" : "Plain", ROUNDS);
+		for (int i = 0; i < shapes.length; i++) {
+			System.out.printf("  %5d terms x %4d positions: %8.1f us per merge%n", shapes[i][0], shapes[i][1],
+					times[i] / 1000.0);
+		}
+
+		double factor = (double) times[2] / times[0];
+		System.out.printf("100 times the positions per term: %.2f times the time%n", factor);
+		if (!compressed && factor > MAX_POSITIONS_FACTOR) {
+			System.out.println("FAILED: merge time grows with the positions");
+			System.exit(1);
+		}
+	}
+}
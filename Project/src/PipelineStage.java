@@ -0,0 +1,216 @@
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One stage of a pipeline, running its work on a work queue with at most a
+ * fixed number of items waiting or running at once. Work handed to a full stage
+ * applies backpressure to the stage before it: a thread outside the stage's
+ * work queue waits for a free slot, and a worker of the stage's own work queue
+ * runs the work itself, since waiting there could leave no worker to free a
+ * slot.
+ *
+ * The stage counts the work it finishes and how long it ran, so its throughput
+ * and depth can be watched while the pipeline runs.
+ *
+ * @author isaiahjenkins
+ */
+public class PipelineStage {
+
+	/**
+	 * Name of the stage
+	 */
+	private final String name;
+
+	/**
+	 * Work queue that runs the stage
+	 */
+	private final WorkQueue queue;
+
+	/**
+	 * Max number of items waiting or running at once
+	 */
+	private final int capacity;
+
+	/**
+	 * Free slots for items
+	 */
+	private final Semaphore slots;
+
+	/**
+	 * Number of items finished
+	 */
+	private final AtomicInteger completed;
+
+	/**
+	 * Number of items run by the thread that handed them over
+	 */
+	private final AtomicInteger callerRuns;
+
+	/**
+	 * Most items waiting or running at once
+	 */
+	private final AtomicInteger peakDepth;
+
+	/**
+	 * Total time spent running items, in nanoseconds
+	 */
+	private final AtomicLong busyNanos;
+
+	/**
+	 * Time the first item was handed over, or 0
+	 */
+	private final AtomicLong firstNanos;
+
+	/**
+	 * Time the last item finished
+	 */
+	private volatile long lastNanos;
+
+	/**
+	 * Constructor for a stage.
+	 *
+	 * @param name     name of the stage
+	 * @param queue    work queue that runs the stage
+	 * @param capacity max number of items waiting or running at once, or 0 for
+	 *                 no limit
+	 */
+	public PipelineStage(String name, WorkQueue queue, int capacity) {
+		this.name = name;
+		this.queue = queue;
+		this.capacity = capacity > 0 ? capacity : Integer.MAX_VALUE;
+		this.slots = new Semaphore(this.capacity);
+		this.completed = new AtomicInteger();
+		this.callerRuns = new AtomicInteger();
+		this.peakDepth = new AtomicInteger();
+		this.busyNanos = new AtomicLong();
+		this.firstNanos = new AtomicLong();
+		this.lastNanos = 0;
+	}
+
+	/**
+	 * Hands an item to the stage, waiting for a free slot or running it in the
+	 * calling thread when the stage is full.
+	 *
+	 * @param work the work for the item
+	 */
+	public void submit(Runnable work) {
+		firstNanos.compareAndSet(0, System.nanoTime());
+
+		if (!slots.tryAcquire()) {
+			if (queue.isWorker()) {
+				callerRuns.incrementAndGet();
+				run(work);
+				return;
+			}
+			slots.acquireUninterruptibly();
+		}
+		peakDepth.accumulateAndGet(getDepth(), Math::max);
+
+		try {
+			queue.execute(() -> {
+				try {
+					run(work);
+				} finally {
+					slots.release();
+				}
+			});
+		} catch (RuntimeException e) {
+			slots.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Runs an item and counts it.
+	 *
+	 * @param work the work for the item
+	 */
+	private void run(Runnable work) {
+		long start = System.nanoTime();
+		try {
+			work.run();
+		} finally {
+			long end = System.nanoTime();
+			busyNanos.addAndGet(end - start);
+			completed.incrementAndGet();
+			lastNanos = end;
+		}
+	}
+
+	/**
+	 * Returns the name of the stage.
+	 *
+	 * @return name of the stage
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the number of items waiting or running in the stage.
+	 *
+	 * @return current depth of the stage
+	 */
+	public int getDepth() {
+		return capacity - slots.availablePermits();
+	}
+
+	/**
+	 * Returns the most items that were waiting or running at once.
+	 *
+	 * @return peak depth of the stage
+	 */
+	public int getPeakDepth() {
+		return peakDepth.get();
+	}
+
+	/**
+	 * Returns the number of items finished.
+	 *
+	 * @return number of finished items
+	 */
+	public int getCompleted() {
+		return completed.get();
+	}
+
+	/**
+	 * Returns the number of items run by the thread that handed them over
+	 * because the stage was full.
+	 *
+	 * @return number of items run by the caller
+	 */
+	public int getCallerRuns() {
+		return callerRuns.get();
+	}
+
+	/**
+	 * Returns the items finished per second, from the first item handed over to
+	 * the last item finished.
+	 *
+	 * @return throughput of the stage
+	 */
+	public double getThroughput() {
+		long first = firstNanos.get();
+		long elapsed = lastNanos - first;
+		return first == 0 || elapsed <= 0 ? 0 : completed.get() * 1e9 / elapsed;
+	}
+
+	/**
+	 * Returns the average time an item ran, in milliseconds. This includes work
+	 * of a later stage that the item's thread ran because that stage was full.
+	 *
+	 * @return average run time
+	 */
+	public double getAverageMillis() {
+		int done = completed.get();
+		return done == 0 ? 0 : busyNanos.get() / 1e6 / done;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s: %d done, %.1f/s, %.2f ms avg, depth %d (peak %d of %s), %d run by caller", name,
+				getCompleted(), getThroughput(), getAverageMillis(), getDepth(), getPeakDepth(),
+				capacity == Integer.MAX_VALUE ? "unbounded" : String.valueOf(capacity), getCallerRuns());
+	}
+}
@@ -0,0 +1,338 @@
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Sorted set of word positions for a single word and location. Positions are
+ * stored as gaps in a growable primitive {@code int[]} instead of boxed
+ * integers in a tree. Every {@link #BLOCK_SIZE} positions start a new block,
+ * and the absolute first position of each block is kept so lookups can skip
+ * straight to the block that may hold a position.
+ *
+ * @author isaiahjenkins
+ */
+public class PositionList extends AbstractSet<Integer> {
+
+	/**
+	 * Number of positions in each block.
+	 */
+	public static final int BLOCK_SIZE = 128;
+
+	/**
+	 * Initial capacity of the gap array. Most words only appear a few times in a
+	 * location.
+	 */
+	private static final int INITIAL_CAPACITY = 2;
+
+	/**
+	 * Gaps between consecutive positions. The first entry is the first position.
+	 */
+	private int[] gaps;
+
+	/**
+	 * Absolute first position of every block, or {@code null} while there is only
+	 * one block.
+	 */
+	private int[] skips;
+
+	/**
+	 * Number of positions stored.
+	 */
+	private int size;
+
+	/**
+	 * Largest position stored.
+	 */
+	private int last;
+
+	/**
+	 * Constructor for an empty position list.
+	 */
+	public PositionList() {
+		gaps = new int[INITIAL_CAPACITY];
+		skips = null;
+		size = 0;
+		last = 0;
+	}
+
+	/**
+	 * Adds a position to the list.
+	 *
+	 * @param position position to add
+	 * @return {@code true} if the position was not already in the list
+	 */
+	public boolean add(int position) {
+		if (size == 0 || position > last) {
+			append(position);
+			return true;
+		}
+
+		if (position == last || contains(position)) {
+			return false;
+		}
+
+		// positions almost always arrive in order, so fall back to a rebuild
+		int[] values = toIntArray();
+		int insert = -Arrays.binarySearch(values, position) - 1;
+		int[] merged = new int[size + 1];
+		System.arraycopy(values, 0, merged, 0, insert);
+		merged[insert] = position;
+		System.arraycopy(values, insert, merged, insert + 1, size - insert);
+		rebuild(merged, merged.length);
+		return true;
+	}
+
+	@Override
+	public boolean add(Integer position) {
+		return add(position.intValue());
+	}
+
+	/**
+	 * Adds all the positions of another list to this list.
+	 *
+	 * @param other positions to add
+	 * @return {@code true} if this list changed
+	 */
+	public boolean addAll(PositionList other) {
+		if (other.size == 0) {
+			return false;
+		}
+
+		if (size == 0 || other.first() > last) {
+			PositionIterator itr = other.positionIterator();
+			while (itr.hasNext()) {
+				append(itr.nextInt());
+			}
+			return true;
+		}
+
+		// overlapping ranges, merge the two sorted arrays
+		int[] mine = toIntArray();
+		int[] theirs = other.toIntArray();
+		int[] merged = new int[mine.length + theirs.length];
+		int i = 0;
+		int j = 0;
+		int k = 0;
+
+		while (i < mine.length || j < theirs.length) {
+			if (j == theirs.length || (i < mine.length && mine[i] < theirs[j])) {
+				merged[k++] = mine[i++];
+			} else if (i == mine.length || theirs[j] < mine[i]) {
+				merged[k++] = theirs[j++];
+			} else {
+				merged[k++] = mine[i++];
+				j++;
+			}
+		}
+
+		boolean changed = k != size;
+		rebuild(merged, k);
+		return changed;
+	}
+
+	/**
+	 * Returns true if the position is in the list. Only the block that may hold
+	 * the position is decoded.
+	 *
+	 * @param position position to look for
+	 * @return true if the position is in the list
+	 */
+	public boolean contains(int position) {
+		if (size == 0 || position > last || position < gaps[0]) {
+			return false;
+		}
+
+		int block = findBlock(position);
+		int index = block * BLOCK_SIZE;
+		int end = Math.min(index + BLOCK_SIZE, size);
+		int value = block == 0 ? gaps[0] : skips[block];
+
+		while (value < position && ++index < end) {
+			value += gaps[index];
+		}
+
+		return value == position;
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return o instanceof Integer && contains(((Integer) o).intValue());
+	}
+
+	/**
+	 * Returns the smallest position in the list.
+	 *
+	 * @return smallest position
+	 * @throws NoSuchElementException if the list is empty
+	 */
+	public int first() {
+		if (size == 0) {
+			throw new NoSuchElementException();
+		}
+		return gaps[0];
+	}
+
+	/**
+	 * Returns the largest position in the list.
+	 *
+	 * @return largest position
+	 * @throws NoSuchElementException if the list is empty
+	 */
+	public int last() {
+		if (size == 0) {
+			throw new NoSuchElementException();
+		}
+		return last;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the positions as a new sorted array.
+	 *
+	 * @return sorted array of positions
+	 */
+	public int[] toIntArray() {
+		int[] values = new int[size];
+		int value = 0;
+		for (int i = 0; i < size; i++) {
+			value += gaps[i];
+			values[i] = value;
+		}
+		return values;
+	}
+
+	@Override
+	public Iterator<Integer> iterator() {
+		PositionIterator itr = positionIterator();
+		return new Iterator<Integer>() {
+			@Override
+			public boolean hasNext() {
+				return itr.hasNext();
+			}
+
+			@Override
+			public Integer next() {
+				return itr.nextInt();
+			}
+		};
+	}
+
+	/**
+	 * Returns an iterator over the positions that does not box them.
+	 *
+	 * @return primitive iterator over the positions
+	 */
+	public PositionIterator positionIterator() {
+		return new PositionIterator();
+	}
+
+	/**
+	 * Appends a position larger than every position in the list.
+	 *
+	 * @param position position to append
+	 */
+	private void append(int position) {
+		if (size == gaps.length) {
+			gaps = Arrays.copyOf(gaps, gaps.length * 2);
+		}
+
+		if (size > 0 && size % BLOCK_SIZE == 0) {
+			int block = size / BLOCK_SIZE;
+			if (skips == null) {
+				skips = new int[INITIAL_CAPACITY];
+				skips[0] = gaps[0];
+			} else if (block == skips.length) {
+				skips = Arrays.copyOf(skips, skips.length * 2);
+			}
+			skips[block] = position;
+		}
+
+		gaps[size] = size == 0 ? position : position - last;
+		last = position;
+		size++;
+	}
+
+	/**
+	 * Replaces the contents of the list with sorted, distinct positions.
+	 *
+	 * @param values sorted positions
+	 * @param count  number of positions to use
+	 */
+	private void rebuild(int[] values, int count) {
+		gaps = new int[Math.max(count, INITIAL_CAPACITY)];
+		skips = null;
+		size = 0;
+		last = 0;
+
+		for (int i = 0; i < count; i++) {
+			append(values[i]);
+		}
+	}
+
+	/**
+	 * Finds the last block that starts at or before the position.
+	 *
+	 * @param position position to look for
+	 * @return block index
+	 */
+	private int findBlock(int position) {
+		if (skips == null) {
+			return 0;
+		}
+
+		int blocks = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		int found = Arrays.binarySearch(skips, 0, blocks, position);
+		return found >= 0 ? found : -found - 2;
+	}
+
+	/**
+	 * Iterator over positions that decodes one gap at a time.
+	 */
+	public class PositionIterator {
+		/**
+		 * Index of the next position.
+		 */
+		private int index;
+
+		/**
+		 * Last decoded position.
+		 */
+		private int value;
+
+		/**
+		 * Constructor for position iterator
+		 */
+		private PositionIterator() {
+			index = 0;
+			value = 0;
+		}
+
+		/**
+		 * Returns true if there are more positions.
+		 *
+		 * @return true if there are more positions
+		 */
+		public boolean hasNext() {
+			return index < size;
+		}
+
+		/**
+		 * Returns the next position.
+		 *
+		 * @return next position
+		 * @throws NoSuchElementException if there are no more positions
+		 */
+		public int nextInt() {
+			if (index >= size) {
+				throw new NoSuchElementException();
+			}
+			value += gaps[index++];
+			return value;
+		}
+	}
+}
@@ -0,0 +1,60 @@
+/**
+ * Cursor over the postings of one word in increasing location ID order, used
+ * to merge the postings of several words one location at a time.
+ *
+ * @author isaiahjenkins
+ */
+public interface PostingCursor {
+
+	/**
+	 * Moves to the next location.
+	 *
+	 * @return true if there is a next location
+	 */
+	public boolean next();
+
+	/**
+	 * Moves to the first location with an ID that is not less than the target.
+	 * Does not move if the cursor is already at such a location.
+	 *
+	 * @param target location ID to move to
+	 * @return true if there is such a location
+	 */
+	public boolean advance(int target);
+
+	/**
+	 * Returns the current location ID.
+	 *
+	 * @return location ID
+	 */
+	public int id();
+
+	/**
+	 * Returns the number of positions in the current location.
+	 *
+	 * @return number of positions
+	 */
+	public int count();
+
+	/**
+	 * Returns the number of locations of the word.
+	 *
+	 * @return number of locations
+	 */
+	public int size();
+
+	/**
+	 * Returns an upper bound on the score the word adds to any location: the
+	 * largest number of positions divided by the word count of the location.
+	 *
+	 * @return the score bound
+	 */
+	public double bound();
+
+	/**
+	 * Returns the positions in the current location.
+	 *
+	 * @return positions
+	 */
+	public PositionList positions();
+}
@@ -0,0 +1,712 @@
+import java.util.Arrays;
+
+/**
+ * Postings for a single word, sorted by location ID. Each location ID is paired
+ * with the positions of the word in that location.
+ *
+ * A compressed list keeps its postings as {@link VByte} encoded bytes: for
+ * every location the ID gap, the number of positions and the position gaps.
+ * Every {@link #BLOCK_SIZE} locations start a block whose first location ID is
+ * written in full, and the first ID and byte offset of every block are kept as
+ * skip data. New postings go to an uncompressed tail that is compressed as
+ * soon as a later location is added.
+ *
+ * @author isaiahjenkins
+ */
+public class PostingList {
+
+	/**
+	 * Number of locations in each compressed block.
+	 */
+	public static final int BLOCK_SIZE = 128;
+
+	/**
+	 * Initial capacity of the posting arrays.
+	 */
+	private static final int INITIAL_CAPACITY = 2;
+
+	/**
+	 * Whether postings are compressed.
+	 */
+	private final boolean compressed;
+
+	/**
+	 * Sorted location IDs that are not compressed.
+	 */
+	private int[] ids;
+
+	/**
+	 * Positions of the word for each location ID that is not compressed.
+	 */
+	private PositionList[] positions;
+
+	/**
+	 * Number of locations that are not compressed.
+	 */
+	private int size;
+
+	/**
+	 * Compressed postings, or {@code null} if nothing is compressed.
+	 */
+	private byte[] data;
+
+	/**
+	 * Number of compressed bytes in use.
+	 */
+	private int length;
+
+	/**
+	 * First location ID of every compressed block.
+	 */
+	private int[] blockIds;
+
+	/**
+	 * Byte offset of every compressed block.
+	 */
+	private int[] blockOffsets;
+
+	/**
+	 * Number of compressed locations.
+	 */
+	private int compressedSize;
+
+	/**
+	 * Last compressed location ID.
+	 */
+	private int compressedLast;
+
+	/**
+	 * Largest score the word adds to a location, as of {@link #boundVersion}.
+	 */
+	private double bound;
+
+	/**
+	 * Index version the bound was computed for, or -1 if it never was.
+	 */
+	private volatile int boundVersion;
+
+	/**
+	 * Constructor for an empty, uncompressed posting list.
+	 */
+	public PostingList() {
+		this(false);
+	}
+
+	/**
+	 * Constructor for an empty posting list.
+	 *
+	 * @param compressed whether to compress postings
+	 */
+	public PostingList(boolean compressed) {
+		this.compressed = compressed;
+		ids = new int[INITIAL_CAPACITY];
+		positions = new PositionList[INITIAL_CAPACITY];
+		size = 0;
+		data = null;
+		length = 0;
+		compressedSize = 0;
+		boundVersion = -1;
+	}
+
+	/**
+	 * Adds a position of the word in a location.
+	 *
+	 * @param id       location ID
+	 * @param position position of the word in the location
+	 * @return {@code true} if the position was not already stored
+	 */
+	public boolean add(int id, int position) {
+		// words are added one location at a time, so check the last one first
+		if (size > 0 && ids[size - 1] == id) {
+			return positions[size - 1].add(position);
+		}
+
+		PositionList found = get(id);
+		if (found == null) {
+			found = new PositionList();
+			insert(id, found);
+		} else if (id <= compressedLast && compressedSize > 0) {
+			decompress();
+			found = get(id);
+		}
+		return found.add(position);
+	}
+
+	/**
+	 * Adds all the postings of another list to this list, translating location
+	 * IDs through the mapping provided. Positions for locations this list does
+	 * not have yet are shared, not copied.
+	 *
+	 * When the other list is not compressed and all its locations come after
+	 * ours in the same order, which is the usual case when merging the index of
+	 * a new file, its postings are moved instead: the arrays are appended or
+	 * taken over whole, so the cost depends on the number of locations and not
+	 * on the number of positions. The other list is left empty then.
+	 *
+	 * @param other postings to add
+	 * @param remap new location ID for each location ID of the other list
+	 */
+	public void addAll(PostingList other, int[] remap) {
+		if (other.compressedSize == 0 && appendable(other, remap)) {
+			moveAll(other, remap);
+			return;
+		}
+
+		for (Cursor cursor = other.cursor(); cursor.next();) {
+			int id = remap[cursor.id()];
+			PositionList found = id > lastId() ? null : get(id);
+			if (found == null) {
+				insert(id, cursor.positions());
+			} else {
+				if (id <= compressedLast && compressedSize > 0) {
+					decompress();
+					found = get(id);
+				}
+				found.addAll(cursor.positions());
+			}
+		}
+
+		if (compressed) {
+			compress();
+		}
+	}
+
+	/**
+	 * Returns true if the translated location IDs of an uncompressed list are
+	 * increasing and all greater than ours.
+	 *
+	 * @param other uncompressed postings to add
+	 * @param remap new location ID for each location ID of the other list
+	 * @return true if the postings can be appended as they are
+	 */
+	private boolean appendable(PostingList other, int[] remap) {
+		int last = lastId();
+		for (int i = 0; i < other.size; i++) {
+			int id = remap[other.ids[i]];
+			if (id <= last) {
+				return false;
+			}
+			last = id;
+		}
+		return true;
+	}
+
+	/**
+	 * Moves the postings of an uncompressed list to the end of this list,
+	 * translating location IDs. Takes over the arrays of the other list if this
+	 * list is empty, and leaves the other list empty.
+	 *
+	 * @param other uncompressed postings that come after ours
+	 * @param remap new location ID for each location ID of the other list
+	 */
+	private void moveAll(PostingList other, int[] remap) {
+		if (size == 0 && compressedSize == 0) {
+			ids = other.ids;
+			positions = other.positions;
+			for (int i = 0; i < other.size; i++) {
+				ids[i] = remap[ids[i]];
+			}
+		} else {
+			// the previous location is complete once later ones are added
+			if (compressed && size > 0) {
+				compress();
+			}
+
+			if (size + other.size > ids.length) {
+				int capacity = Math.max(size + other.size, ids.length * 2);
+				ids = Arrays.copyOf(ids, capacity);
+				positions = Arrays.copyOf(positions, capacity);
+			}
+
+			for (int i = 0; i < other.size; i++) {
+				ids[size + i] = remap[other.ids[i]];
+			}
+			System.arraycopy(other.positions, 0, positions, size, other.size);
+		}
+
+		size += other.size;
+		other.ids = new int[INITIAL_CAPACITY];
+		other.positions = new PositionList[INITIAL_CAPACITY];
+		other.size = 0;
+
+		if (compressed) {
+			compress();
+		}
+	}
+
+	/**
+	 * Returns the positions for a location. Compressed positions are decoded
+	 * into a new list.
+	 *
+	 * @param id location ID
+	 * @return positions of the word in the location, or {@code null} if the word
+	 *         is not in the location
+	 */
+	public PositionList get(int id) {
+		Cursor cursor = cursor();
+		return cursor.advance(id) && cursor.id() == id ? cursor.positions() : null;
+	}
+
+	/**
+	 * Returns true if the word is in a location.
+	 *
+	 * @param id location ID
+	 * @return true if the word is in the location
+	 */
+	public boolean contains(int id) {
+		Cursor cursor = cursor();
+		return cursor.advance(id) && cursor.id() == id;
+	}
+
+	/**
+	 * Returns true if the word is at a position in a location, without decoding
+	 * any other location or position.
+	 *
+	 * @param id       location ID
+	 * @param position position of the word
+	 * @return true if the word is at the position in the location
+	 */
+	public boolean contains(int id, int position) {
+		Cursor cursor = cursor();
+		return cursor.advance(id) && cursor.id() == id && cursor.contains(position);
+	}
+
+	/**
+	 * Returns the number of locations in this list.
+	 *
+	 * @return number of locations
+	 */
+	public int size() {
+		return compressedSize + size;
+	}
+
+	/**
+	 * Returns a cursor over the postings in location ID order.
+	 *
+	 * @return cursor positioned before the first location
+	 */
+	public Cursor cursor() {
+		return new Cursor();
+	}
+
+	/**
+	 * Compresses every posting that is not compressed yet.
+	 */
+	public void compress() {
+		for (int i = 0; i < size; i++) {
+			if (compressedSize % BLOCK_SIZE == 0) {
+				int block = compressedSize / BLOCK_SIZE;
+				if (blockIds == null) {
+					blockIds = new int[INITIAL_CAPACITY];
+					blockOffsets = new int[INITIAL_CAPACITY];
+				} else if (block == blockIds.length) {
+					blockIds = Arrays.copyOf(blockIds, block * 2);
+					blockOffsets = Arrays.copyOf(blockOffsets, block * 2);
+				}
+				blockIds[block] = ids[i];
+				blockOffsets[block] = length;
+				write(ids[i]);
+			} else {
+				write(ids[i] - compressedLast);
+			}
+
+			write(positions[i].size());
+			int last = 0;
+			PositionList.PositionIterator itr = positions[i].positionIterator();
+			while (itr.hasNext()) {
+				int position = itr.nextInt();
+				write(position - last);
+				last = position;
+			}
+
+			compressedLast = ids[i];
+			compressedSize++;
+		}
+
+		if (ids.length > INITIAL_CAPACITY) {
+			ids = new int[INITIAL_CAPACITY];
+			positions = new PositionList[INITIAL_CAPACITY];
+		} else {
+			Arrays.fill(positions, null);
+		}
+		size = 0;
+	}
+
+	/**
+	 * Returns the largest location ID in this list.
+	 *
+	 * @return largest location ID, or -1 if the list is empty
+	 */
+	private int lastId() {
+		if (size > 0) {
+			return ids[size - 1];
+		}
+		return compressedSize > 0 ? compressedLast : -1;
+	}
+
+	/**
+	 * Inserts positions for a location ID that is not in the list yet.
+	 *
+	 * @param id    location ID
+	 * @param found positions for the location
+	 */
+	private void insert(int id, PositionList found) {
+		if (compressedSize > 0 && id < compressedLast) {
+			decompress();
+		}
+
+		// the previous location is complete once a later one is added
+		if (compressed && size > 0 && ids[size - 1] < id) {
+			compress();
+		}
+
+		if (size == ids.length) {
+			ids = Arrays.copyOf(ids, size * 2);
+			positions = Arrays.copyOf(positions, size * 2);
+		}
+
+		int index = size;
+		if (size > 0 && ids[size - 1] > id) {
+			index = -Arrays.binarySearch(ids, 0, size, id) - 1;
+			System.arraycopy(ids, index, ids, index + 1, size - index);
+			System.arraycopy(positions, index, positions, index + 1, size - index);
+		}
+
+		ids[index] = id;
+		positions[index] = found;
+		size++;
+	}
+
+	/**
+	 * Decodes every compressed posting back into the uncompressed arrays. Only
+	 * needed when postings arrive out of location order.
+	 */
+	private void decompress() {
+		int total = size();
+		int[] allIds = new int[Math.max(total, INITIAL_CAPACITY)];
+		PositionList[] allPositions = new PositionList[allIds.length];
+		int i = 0;
+
+		for (Cursor cursor = cursor(); cursor.next(); i++) {
+			allIds[i] = cursor.id();
+			allPositions[i] = cursor.positions();
+		}
+
+		ids = allIds;
+		positions = allPositions;
+		size = total;
+		data = null;
+		length = 0;
+		blockIds = null;
+		blockOffsets = null;
+		compressedSize = 0;
+	}
+
+	/**
+	 * Appends a value to the compressed bytes.
+	 *
+	 * @param value non-negative value to append
+	 */
+	private void write(int value) {
+		if (data == null) {
+			data = new byte[Math.max(VByte.MAX_SIZE, INITIAL_CAPACITY)];
+		} else if (length + VByte.MAX_SIZE > data.length) {
+			data = Arrays.copyOf(data, Math.max(length + VByte.MAX_SIZE, data.length + (data.length >> 1)));
+		}
+		length = VByte.write(data, length, value);
+	}
+
+	/**
+	 * Computes the largest score the word adds to any location, its number of
+	 * positions divided by the word count of the location, unless it was already
+	 * computed for the same index version. Word counts only change when the
+	 * index changes, so the bound stays valid until the version does.
+	 *
+	 * @param locations location word counts
+	 * @param version   version of the index the counts belong to
+	 * @return the score bound
+	 */
+	public double updateBound(LocationTableInterface locations, int version) {
+		if (boundVersion != version) {
+			double max = 0;
+			for (Cursor cursor = cursor(); cursor.next();) {
+				max = Math.max(max, (double) cursor.count() / locations.getCount(cursor.id()));
+			}
+			bound = max;
+			boundVersion = version;
+		}
+		return bound;
+	}
+
+	/**
+	 * Finds the first value that is not less than the target with a galloping
+	 * search: the distance from the start doubles until it passes the target,
+	 * then a binary search narrows it down. Moving a short distance costs a few
+	 * steps no matter how long the array is.
+	 *
+	 * @param values sorted values
+	 * @param from   index to start at, inclusive
+	 * @param to     index to stop at, exclusive
+	 * @param target value to look for
+	 * @return index of the first value not less than the target, or {@code to}
+	 */
+	public static int gallop(int[] values, int from, int to, int target) {
+		if (from >= to || values[from] >= target) {
+			return from;
+		}
+
+		// values[low] is below the target, values[high] is not or high is to
+		int low = from;
+		int step = 1;
+		int high = from + 1;
+		while (high < to && values[high] < target) {
+			low = high;
+			step <<= 1;
+			high = Math.min(from + step, to);
+		}
+
+		low++;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (values[middle] < target) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Cursor over the postings of the list in location ID order. Compressed
+	 * positions are only decoded when asked for.
+	 */
+	public class Cursor implements PostingCursor {
+		/**
+		 * Index of the current location.
+		 */
+		private int index;
+
+		/**
+		 * Current location ID.
+		 */
+		private int id;
+
+		/**
+		 * Number of positions in the current location.
+		 */
+		private int count;
+
+		/**
+		 * Byte offset of the positions of the current compressed location.
+		 */
+		private int positionsOffset;
+
+		/**
+		 * Byte offset of the next compressed location, when it is known.
+		 */
+		private int nextOffset;
+
+		/**
+		 * Whether the positions of the current location must be skipped to find the
+		 * next compressed location.
+		 */
+		private boolean skipPending;
+
+		/**
+		 * Byte offset of the next compressed value to read.
+		 */
+		private int at;
+
+		/**
+		 * Constructor for cursor
+		 */
+		private Cursor() {
+			index = -1;
+			nextOffset = 0;
+			skipPending = false;
+		}
+
+		/**
+		 * Moves to the next location.
+		 *
+		 * @return true if there is a next location
+		 */
+		@Override
+		public boolean next() {
+			index++;
+
+			if (index < compressedSize) {
+				at = skipPending ? skip(positionsOffset, count) : nextOffset;
+				int value = read();
+				id = index % BLOCK_SIZE == 0 ? value : id + value;
+				count = read();
+				positionsOffset = at;
+				skipPending = true;
+				return true;
+			}
+
+			int tail = index - compressedSize;
+			if (tail < size) {
+				id = ids[tail];
+				count = positions[tail].size();
+				return true;
+			}
+
+			index = compressedSize + size;
+			return false;
+		}
+
+		/**
+		 * Moves to the first location with an ID that is not less than the target,
+		 * skipping whole blocks of compressed locations where possible.
+		 *
+		 * @param target location ID to move to
+		 * @return true if there is such a location
+		 */
+		@Override
+		public boolean advance(int target) {
+			if (index >= 0 && index < size() && id >= target) {
+				return true;
+			}
+
+			if (compressedSize > 0 && target <= compressedLast) {
+				// the last block starting at or before the target
+				int blocks = (compressedSize + BLOCK_SIZE - 1) / BLOCK_SIZE;
+				int from = Math.min(Math.max(index, 0) / BLOCK_SIZE, blocks);
+				int block = Math.max(gallop(blockIds, from, blocks, target + 1) - 1, 0);
+
+				if (block * BLOCK_SIZE > index) {
+					index = block * BLOCK_SIZE - 1;
+					nextOffset = blockOffsets[block];
+					skipPending = false;
+				}
+			} else if (size > 0 && target <= ids[size - 1]) {
+				int tail = gallop(ids, Math.min(Math.max(index - compressedSize, 0), size), size, target);
+				if (compressedSize + tail - 1 > index) {
+					index = compressedSize + tail - 1;
+				}
+			} else {
+				index = compressedSize + size;
+				return false;
+			}
+
+			while (next()) {
+				if (id >= target) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Returns the current location ID.
+		 *
+		 * @return location ID
+		 */
+		@Override
+		public int id() {
+			return id;
+		}
+
+		/**
+		 * Returns the number of positions in the current location.
+		 *
+		 * @return number of positions
+		 */
+		@Override
+		public int count() {
+			return count;
+		}
+
+		@Override
+		public int size() {
+			return PostingList.this.size();
+		}
+
+		/**
+		 * Returns the score bound last computed by
+		 * {@link PostingList#updateBound(LocationTableInterface, int)}.
+		 *
+		 * @return the score bound
+		 */
+		@Override
+		public double bound() {
+			return bound;
+		}
+
+		/**
+		 * Returns the positions in the current location.
+		 *
+		 * @return positions, decoded into a new list if they are compressed
+		 */
+		@Override
+		public PositionList positions() {
+			if (index >= compressedSize) {
+				return positions[index - compressedSize];
+			}
+
+			PositionList decoded = new PositionList();
+			at = positionsOffset;
+			int position = 0;
+			for (int i = 0; i < count; i++) {
+				position += read();
+				decoded.add(position);
+			}
+			return decoded;
+		}
+
+		/**
+		 * Returns true if the word is at a position in the current location.
+		 *
+		 * @param position position to look for
+		 * @return true if the word is at the position
+		 */
+		public boolean contains(int position) {
+			if (index >= compressedSize) {
+				return positions[index - compressedSize].contains(position);
+			}
+
+			at = positionsOffset;
+			int value = 0;
+			for (int i = 0; i < count; i++) {
+				value += read();
+				if (value >= position) {
+					return value == position;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Returns the offset after a number of values starting at an offset.
+		 *
+		 * @param offset byte offset of the first value
+		 * @param values number of values to skip
+		 * @return byte offset after the values
+		 */
+		private int skip(int offset, int values) {
+			while (values > 0) {
+				if (data[offset++] >= 0) {
+					values--;
+				}
+			}
+			return offset;
+		}
+
+		/**
+		 * Reads the compressed value at the read offset and advances the offset.
+		 *
+		 * @return value read
+		 */
+		private int read() {
+			int b = data[at++];
+			int value = b & 0x7F;
+			for (int shift = 7; b < 0; shift += 7) {
+				b = data[at++];
+				value |= (b & 0x7F) << shift;
+			}
+			return value;
+		}
+	}
+}
@@ -0,0 +1,402 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import opennlp.tools.stemmer.Stemmer;
+
+/**
+ * A parsed search query. Plain words match a location if any of them is in it,
+ * as before. A query can also hold clauses that every matched location must
+ * satisfy:
+ *
+ * <pre>
+ * "quick brown fox"    the words next to each other in this order
+ * quick NEAR/3 fox     the words at most 3 positions apart, in either order
+ * </pre>
+ *
+ * Plain words can be made required or excluded:
+ *
+ * <pre>
+ * quick AND fox        locations must have both words
+ * quick NOT slow       locations with the excluded word are left out
+ * </pre>
+ *
+ * Clause words are cleaned and stemmed like plain words and always matched
+ * exactly.
+ *
+ * @author isaiahjenkins
+ */
+public class Query {
+
+	/** Regular expression that matches a quoted phrase. **/
+	public static final Pattern PHRASE_REGEX = Pattern.compile("\"([^\"]*)\"");
+
+	/** Regular expression that matches a proximity clause. **/
+	public static final Pattern NEAR_REGEX = Pattern.compile("(\\S+)\\s+NEAR/(\\d+)\\s+(\\S+)");
+
+	/**
+	 * Plain stemmed words, sorted.
+	 */
+	private final TreeSet<String> words;
+
+	/**
+	 * Plain stemmed words every matched location must have, sorted.
+	 */
+	private final TreeSet<String> required;
+
+	/**
+	 * Stemmed words no matched location may have, sorted.
+	 */
+	private final TreeSet<String> excluded;
+
+	/**
+	 * Phrase and proximity clauses.
+	 */
+	private final List<Clause> clauses;
+
+	/**
+	 * Constructor for an empty query.
+	 */
+	private Query() {
+		words = new TreeSet<>();
+		required = new TreeSet<>();
+		excluded = new TreeSet<>();
+		clauses = new ArrayList<>();
+	}
+
+	/**
+	 * Parses a query line. Phrases are taken out of the line first, then
+	 * proximity clauses, and the rest of the line is plain words.
+	 *
+	 * @param line    the query line
+	 * @param stemmer stemmer for the words
+	 * @return the parsed query
+	 */
+	public static Query parse(String line, Stemmer stemmer) {
+		return parse(line, stemmer, false);
+	}
+
+	/**
+	 * Parses a query line. Phrases are taken out of the line first, then
+	 * proximity clauses, and the rest of the line is plain words.
+	 *
+	 * @param line        the query line
+	 * @param stemmer     stemmer for the words
+	 * @param conjunctive whether every plain word is required
+	 * @return the parsed query
+	 */
+	public static Query parse(String line, Stemmer stemmer, boolean conjunctive) {
+		Query query = new Query();
+
+		StringBuilder rest = new StringBuilder();
+		Matcher phrases = PHRASE_REGEX.matcher(line);
+		while (phrases.find()) {
+			List<String> phrase = stem(phrases.group(1), stemmer);
+			if (!phrase.isEmpty()) {
+				query.clauses.add(new Clause(phrase.toArray(new String[0]), 0));
+			}
+			phrases.appendReplacement(rest, " ");
+		}
+		phrases.appendTail(rest);
+
+		StringBuilder plain = new StringBuilder();
+		Matcher nears = NEAR_REGEX.matcher(rest);
+		while (nears.find()) {
+			List<String> left = stem(nears.group(1), stemmer);
+			List<String> right = stem(nears.group(3), stemmer);
+
+			if (left.size() == 1 && right.size() == 1) {
+				int distance;
+				try {
+					distance = Math.max(Integer.parseInt(nears.group(2)), 1);
+				} catch (NumberFormatException e) {
+					distance = Integer.MAX_VALUE;
+				}
+				query.clauses.add(new Clause(new String[] { left.get(0), right.get(0) }, distance));
+				nears.appendReplacement(plain, " ");
+			} else {
+				nears.appendReplacement(plain, " $1 $3 ");
+			}
+		}
+		nears.appendTail(plain);
+
+		List<String> previous = List.of();
+		boolean and = false;
+		boolean not = false;
+
+		for (String token : TextParser.split(plain.toString())) {
+			if (token.equals("AND")) {
+				query.required.addAll(previous);
+				and = true;
+			} else if (token.equals("NOT")) {
+				not = true;
+			} else {
+				List<String> stems = stem(token, stemmer);
+				if (not) {
+					query.excluded.addAll(stems);
+				} else {
+					query.words.addAll(stems);
+					if (and || conjunctive) {
+						query.required.addAll(stems);
+					}
+				}
+
+				previous = not ? List.of() : stems;
+				and = false;
+				not = false;
+			}
+		}
+
+		return query;
+	}
+
+	/**
+	 * Cleans, splits and stems text.
+	 *
+	 * @param text    text to stem
+	 * @param stemmer stemmer for the words
+	 * @return stemmed words in order
+	 */
+	private static List<String> stem(String text, Stemmer stemmer) {
+		List<String> stems = new ArrayList<>();
+		for (String word : TextParser.parse(text)) {
+			stems.add(stemmer.stem(word).toString());
+		}
+		return stems;
+	}
+
+	/**
+	 * Returns the plain stemmed words.
+	 *
+	 * @return unmodifiable sorted set of words
+	 */
+	public Set<String> getWords() {
+		return Collections.unmodifiableSet(words);
+	}
+
+	/**
+	 * Returns the plain stemmed words every matched location must have, which
+	 * are also part of {@link #getWords()}.
+	 *
+	 * @return unmodifiable sorted set of required words
+	 */
+	public Set<String> getRequired() {
+		return Collections.unmodifiableSet(required);
+	}
+
+	/**
+	 * Returns the stemmed words no matched location may have.
+	 *
+	 * @return unmodifiable sorted set of excluded words
+	 */
+	public Set<String> getExcluded() {
+		return Collections.unmodifiableSet(excluded);
+	}
+
+	/**
+	 * Returns true if the query only has plain words that are neither required
+	 * nor excluded, so any location with any of the words matches.
+	 *
+	 * @return true if the query is a plain OR query
+	 */
+	public boolean isDisjunctive() {
+		return required.isEmpty() && excluded.isEmpty() && clauses.isEmpty();
+	}
+
+	/**
+	 * Returns the phrase and proximity clauses.
+	 *
+	 * @return unmodifiable list of clauses
+	 */
+	public List<Clause> getClauses() {
+		return Collections.unmodifiableList(clauses);
+	}
+
+	/**
+	 * Returns true if the query has neither words nor clauses.
+	 *
+	 * @return true if the query is empty
+	 */
+	public boolean isEmpty() {
+		return words.isEmpty() && clauses.isEmpty();
+	}
+
+	/**
+	 * Returns the query in a normal form, each part sorted and joined by a space:
+	 * the optional words, the required words joined by AND, the excluded words
+	 * each after NOT, then the clauses.
+	 *
+	 * @return the query in normal form
+	 */
+	@Override
+	public String toString() {
+		ArrayList<String> parts = new ArrayList<>();
+		for (String word : words) {
+			if (!required.contains(word)) {
+				parts.add(word);
+			}
+		}
+
+		if (!required.isEmpty()) {
+			parts.add(String.join(" AND ", required));
+		}
+
+		for (String word : excluded) {
+			parts.add("NOT " + word);
+		}
+
+		TreeSet<String> sorted = new TreeSet<>();
+		for (Clause clause : clauses) {
+			sorted.add(clause.toString());
+		}
+		parts.addAll(sorted);
+
+		return String.join(" ", parts);
+	}
+
+	/**
+	 * A phrase or proximity clause.
+	 */
+	public static class Clause {
+		/**
+		 * Stemmed words of the clause in order.
+		 */
+		private final String[] words;
+
+		/**
+		 * Largest distance between the two words of a proximity clause, or 0 for a
+		 * phrase.
+		 */
+		private final int distance;
+
+		/**
+		 * Constructor for clause
+		 *
+		 * @param words    stemmed words of the clause in order
+		 * @param distance largest distance for a proximity clause, or 0 for a phrase
+		 */
+		public Clause(String[] words, int distance) {
+			this.words = words;
+			this.distance = distance;
+		}
+
+		/**
+		 * Returns true if this is a phrase clause.
+		 *
+		 * @return true for a phrase
+		 */
+		public boolean isPhrase() {
+			return distance == 0;
+		}
+
+		/**
+		 * Returns the stemmed words of the clause in order.
+		 *
+		 * @return unmodifiable list of words
+		 */
+		public List<String> getWords() {
+			return List.of(words);
+		}
+
+		/**
+		 * Returns the largest distance between the words of a proximity clause.
+		 *
+		 * @return the distance, or 0 for a phrase
+		 */
+		public int getDistance() {
+			return distance;
+		}
+
+		/**
+		 * Counts the positions of the clause words that take part in a match in one
+		 * location. For a phrase that is the words of every occurrence of the
+		 * phrase; for a proximity clause, every position of either word that has
+		 * the other word close enough.
+		 *
+		 * @param positions sorted positions of each clause word in the location, in
+		 *                  the order of {@link #getWords()}
+		 * @return number of matching positions, or 0 if the clause does not match
+		 */
+		public int matches(int[][] positions) {
+			if (isPhrase()) {
+				return phraseMatches(positions);
+			}
+
+			if (words[0].equals(words[1])) {
+				return nearMatches(positions[0], positions[1], true);
+			}
+			return nearMatches(positions[0], positions[1], false) + nearMatches(positions[1], positions[0], false);
+		}
+
+		/**
+		 * Counts the positions of every occurrence of the phrase by merging the
+		 * position lists, each shifted by its place in the phrase.
+		 *
+		 * @param positions sorted positions of each phrase word
+		 * @return number of positions in occurrences of the phrase
+		 */
+		private int phraseMatches(int[][] positions) {
+			int[] next = new int[positions.length];
+			int occurrences = 0;
+
+			outer: for (int start : positions[0]) {
+				for (int i = 1; i < positions.length; i++) {
+					int[] list = positions[i];
+					while (next[i] < list.length && list[next[i]] < start + i) {
+						next[i]++;
+					}
+					if (next[i] == list.length) {
+						break outer;
+					}
+					if (list[next[i]] != start + i) {
+						continue outer;
+					}
+				}
+				occurrences++;
+			}
+
+			return occurrences * positions.length;
+		}
+
+		/**
+		 * Counts the positions in one list that have a position of the other list
+		 * within the distance.
+		 *
+		 * @param from  sorted positions to count
+		 * @param other sorted positions to look for
+		 * @param same  whether both lists are the same word, so a position does not
+		 *              count as close to itself
+		 * @return number of positions with a close position
+		 */
+		private int nearMatches(int[] from, int[] other, boolean same) {
+			int next = 0;
+			int matches = 0;
+
+			for (int position : from) {
+				long low = (long) position - distance;
+				while (next < other.length && other[next] < low) {
+					next++;
+				}
+
+				for (int i = next; i < other.length && other[i] <= (long) position + distance; i++) {
+					if (!same || other[i] != position) {
+						matches++;
+						break;
+					}
+				}
+			}
+
+			return matches;
+		}
+
+		@Override
+		public String toString() {
+			return isPhrase() ? "\"" + String.join(" ", words) + "\""
+					: words[0] + " NEAR/" + distance + " " + words[1];
+		}
+	}
+}
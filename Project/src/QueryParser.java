@@ -2,7 +2,6 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.TreeMap;
-import java.util.TreeSet;
 
 import opennlp.tools.stemmer.Stemmer;
 import opennlp.tools.stemmer.snowball.SnowballStemmer;
@@ -17,12 +16,17 @@ public class QueryParser implements QueryParserInterface {
 	/**
 	 * Queries and results of inverted index
 	 */
-	private final TreeMap<String, List<InvertedIndex.QueryData>> queriesAndResults;
+	private final TreeMap<String, List<SearchIndex.QueryData>> queriesAndResults;
 
 	/**
 	 * The inverted index.
 	 */
-	private final InvertedIndex index;
+	private final SearchIndex index;
+
+	/**
+	 * Whether every plain query word is required.
+	 */
+	private final boolean conjunctive;
 
 	/**
 	 * Final constant default to help create stemmer instances.
@@ -34,9 +38,20 @@ public class QueryParser implements QueryParserInterface {
 	 * 
 	 * @param theIndex the inverted index
 	 */
-	public QueryParser(InvertedIndex theIndex) {
+	public QueryParser(SearchIndex theIndex) {
+		this(theIndex, false);
+	}
+
+	/**
+	 * Constructor for query parser.
+	 * 
+	 * @param theIndex    the inverted index
+	 * @param conjunctive whether every plain query word is required
+	 */
+	public QueryParser(SearchIndex theIndex, boolean conjunctive) {
 		queriesAndResults = new TreeMap<>();
 		index = theIndex;
+		this.conjunctive = conjunctive;
 	}
 
 	/**
@@ -48,24 +63,19 @@ public class QueryParser implements QueryParserInterface {
 	public void buildQuery(String line, boolean exactFlag) {
 		Stemmer stemmer = new SnowballStemmer(DEFAULT);
 
-		TreeSet<String> queries = new TreeSet<>();
-
-		for (String word : TextParser.parse(line)) {
-			word = stemmer.stem(word).toString();
-			queries.add(word);
-		}
+		Query query = Query.parse(line, stemmer, conjunctive);
 
-		if (queries.isEmpty()) {
+		if (query.isEmpty()) {
 			return;
 		}
 
-		String joined = String.join(" ", queries);
+		String joined = query.toString();
 
 		if (queriesAndResults.containsKey(joined)) {
 			return;
 		}
 
-		List<InvertedIndex.QueryData> queryData = index.search(queries, exactFlag);
+		List<SearchIndex.QueryData> queryData = index.search(query, exactFlag);
 		queriesAndResults.put(joined, queryData);
 	}
 
@@ -1,10 +1,24 @@
 import java.util.ConcurrentModificationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Maintains a pair of associated locks, one for read-only operations and one
  * for writing. The read lock may be held simultaneously by multiple reader
  * threads, so long as there are no writers. The write lock is exclusive, but
  * also tracks which thread holds the lock.
+ *
+ * Writers are preferred: once a writer is waiting, new readers wait behind it
+ * instead of keeping the lock busy forever. Writers are served in the order
+ * they arrived, and when a writer releases the lock the readers that were
+ * waiting for it go first, so neither side starves. A thread that already
+ * holds the read lock may lock it again without waiting. Readers and writers
+ * wait on separate conditions, so a release only wakes threads that can go
+ * ahead.
+ *
+ * The lock also counts how often and how long threads waited for it and held
+ * it, and how many threads were waiting at once.
  */
 public class ReadWriteLock {
 
@@ -24,10 +38,75 @@ public class ReadWriteLock {
 	 */
 	private int numWriters;
 
+	/**
+	 * Thread holding the write lock, or null
+	 */
+	private Thread writer;
+
 	/**
 	 * Lock object member
 	 */
-	private final Object lock;
+	private final ReentrantLock lock;
+
+	/**
+	 * Condition readers wait on
+	 */
+	private final Condition readable;
+
+	/**
+	 * Condition writers wait on
+	 */
+	private final Condition writable;
+
+	/**
+	 * Number of readers waiting
+	 */
+	private int waitingReaders;
+
+	/**
+	 * Number of writers waiting
+	 */
+	private int waitingWriters;
+
+	/**
+	 * Number of readers let in ahead of waiting writers after a write
+	 */
+	private int releasedReaders;
+
+	/**
+	 * Ticket given to the next writer that arrives
+	 */
+	private long nextTicket;
+
+	/**
+	 * Ticket of the writer allowed to lock next
+	 */
+	private long servingTicket;
+
+	/**
+	 * Read holds of the current thread
+	 */
+	private final ThreadLocal<ReadHold> readHolds;
+
+	/**
+	 * Statistics of read locking
+	 */
+	private final Statistics readStatistics;
+
+	/**
+	 * Statistics of write locking
+	 */
+	private final Statistics writeStatistics;
+
+	/**
+	 * Largest number of threads waiting at once
+	 */
+	private int peakWaiting;
+
+	/**
+	 * Time the write lock was locked
+	 */
+	private long writeStart;
 
 	/**
 	 * Initializes a new simple read/write lock.
@@ -35,7 +114,12 @@ public class ReadWriteLock {
 	public ReadWriteLock() {
 		readerLock = new ReadLock();
 		writerLock = new WriteLock();
-		lock = new Object();
+		lock = new ReentrantLock();
+		readable = lock.newCondition();
+		writable = lock.newCondition();
+		readHolds = ThreadLocal.withInitial(ReadHold::new);
+		readStatistics = new Statistics();
+		writeStatistics = new Statistics();
 		numReaders = 0;
 		numWriters = 0;
 	}
@@ -76,40 +160,153 @@ public class ReadWriteLock {
 		return other != null && other.getId() == Thread.currentThread().getId();
 	}
 
+	/**
+	 * Returns the statistics of the read lock.
+	 *
+	 * @return read lock statistics
+	 */
+	public Statistics getReadStatistics() {
+		lock.lock();
+		try {
+			return readStatistics.copy();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the statistics of the write lock.
+	 *
+	 * @return write lock statistics
+	 */
+	public Statistics getWriteStatistics() {
+		lock.lock();
+		try {
+			return writeStatistics.copy();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of threads waiting for the lock.
+	 *
+	 * @return number of waiting readers and writers
+	 */
+	public int getQueueLength() {
+		lock.lock();
+		try {
+			return waitingReaders + waitingWriters;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the largest number of threads that waited for the lock at once.
+	 *
+	 * @return largest number of waiting readers and writers
+	 */
+	public int getPeakQueueLength() {
+		lock.lock();
+		try {
+			return peakWaiting;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public String toString() {
+		lock.lock();
+		try {
+			return String.format("read [%s], write [%s], waiting %d, peak waiting %d", readStatistics,
+					writeStatistics, waitingReaders + waitingWriters, peakWaiting);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Updates the largest number of waiting threads. Must be called while
+	 * holding the lock object.
+	 */
+	private void updatePeak() {
+		peakWaiting = Math.max(peakWaiting, waitingReaders + waitingWriters);
+	}
+
 	/**
 	 * Used to maintain simultaneous read operations.
 	 */
 	private class ReadLock implements Lock {
 
 		/**
-		 * Will wait until there are no active writers in the system, and then will
-		 * increase the number of active readers.
+		 * Will wait until there are no active or waiting writers in the system, and
+		 * then will increase the number of active readers. A thread that already
+		 * holds the read lock does not wait.
 		 */
 		@Override
 		public void lock() {
-			synchronized (lock) {
-				while (numWriters > 0) {
-					try {
-						lock.wait();
-					} catch (InterruptedException e) {
-						Thread.currentThread().interrupt();
+			ReadHold hold = readHolds.get();
+			lock.lock();
+			try {
+				if (hold.count > 0) {
+					hold.count++;
+					numReaders++;
+					return;
+				}
+
+				long waited = 0;
+				if (numWriters > 0 || (waitingWriters > 0 && releasedReaders == 0)) {
+					long start = System.nanoTime();
+					waitingReaders++;
+					updatePeak();
+					while (numWriters > 0 || (waitingWriters > 0 && releasedReaders == 0)) {
+						readable.awaitUninterruptibly();
+					}
+					waitingReaders--;
+					waited = System.nanoTime() - start;
+
+					// only a reader that waited takes one of the slots the writer left it
+					if (releasedReaders > 0) {
+						releasedReaders--;
 					}
 				}
+
 				numReaders++;
+				readStatistics.acquired(waited);
+				hold.count = 1;
+				hold.start = System.nanoTime();
+			} finally {
+				lock.unlock();
 			}
 		}
 
 		/**
-		 * Will decrease the number of active readers, and notify any waiting threads if
-		 * necessary.
+		 * Will decrease the number of active readers, and wake a waiting writer if
+		 * this was the last reader. If unlock is called by a thread that does not
+		 * hold the read lock, then a {@link ConcurrentModificationException} is
+		 * thrown.
 		 */
 		@Override
 		public void unlock() {
-			synchronized (lock) {
+			ReadHold hold = readHolds.get();
+			if (hold.count == 0) {
+				throw new ConcurrentModificationException("Read lock is not held by this thread.");
+			}
+
+			lock.lock();
+			try {
+				hold.count--;
 				numReaders--;
-				if (numReaders == 0) {
-					lock.notifyAll();
+				if (hold.count == 0) {
+					readStatistics.released(System.nanoTime() - hold.start);
+				}
+				if (numReaders == 0 && waitingWriters > 0) {
+					writable.signalAll();
 				}
+			} finally {
+				lock.unlock();
 			}
 		}
 	}
@@ -119,40 +316,216 @@ public class ReadWriteLock {
 	 */
 	private class WriteLock implements Lock {
 		/**
-		 * Will wait until there are no active readers or writers in the system, and
-		 * then will increase the number of active writers and update which thread holds
-		 * the write lock.
-		 * 
+		 * Will wait until there are no active readers or writers in the system and
+		 * every writer that arrived earlier has had its turn, and then will increase
+		 * the number of active writers and update which thread holds the write lock.
+		 *
 		 */
 		@Override
 		public void lock() {
-			synchronized (lock) {
-				while (numReaders > 0 || numWriters > 0) {
-					try {
-						lock.wait();
-					} catch (InterruptedException e) {
-						Thread.currentThread().interrupt();
+			lock.lock();
+			try {
+				long ticket = nextTicket++;
+				long waited = 0;
 
+				if (numReaders > 0 || numWriters > 0 || releasedReaders > 0 || ticket != servingTicket) {
+					long start = System.nanoTime();
+					waitingWriters++;
+					updatePeak();
+					while (numReaders > 0 || numWriters > 0 || releasedReaders > 0 || ticket != servingTicket) {
+						writable.awaitUninterruptibly();
 					}
+					waitingWriters--;
+					waited = System.nanoTime() - start;
 				}
-				Thread.currentThread();
+
+				servingTicket++;
 				numWriters++;
+				writer = Thread.currentThread();
+				writeStatistics.acquired(waited);
+				writeStart = System.nanoTime();
+			} finally {
+				lock.unlock();
 			}
 		}
 
 		/**
-		 * Will decrease the number of active writers, and notify any waiting threads if
-		 * necessary. If unlock is called by a thread that does not hold the lock, then
-		 * a {@link ConcurrentModificationException} is thrown.
+		 * Will decrease the number of active writers, and wake the readers that
+		 * were waiting, or if there are none the waiting writers. If unlock is
+		 * called by a thread that does not hold the lock, then a
+		 * {@link ConcurrentModificationException} is thrown.
 		 *
 		 * @see #sameThread(Thread)
 		 */
 		@Override
 		public void unlock() {
-			synchronized (lock) {
+			lock.lock();
+			try {
+				if (!sameThread(writer)) {
+					throw new ConcurrentModificationException("Write lock is not held by this thread.");
+				}
+
 				numWriters--;
-				lock.notifyAll();
+				writer = null;
+				writeStatistics.released(System.nanoTime() - writeStart);
+
+				if (waitingReaders > 0) {
+					releasedReaders = waitingReaders;
+					readable.signalAll();
+				} else if (waitingWriters > 0) {
+					writable.signalAll();
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Read lock holds of one thread.
+	 */
+	private static class ReadHold {
+		/**
+		 * Number of times the thread holds the read lock
+		 */
+		private int count;
+
+		/**
+		 * Time the thread first locked the read lock
+		 */
+		private long start;
+	}
+
+	/**
+	 * Counts of how often and how long threads waited for and held a lock.
+	 */
+	public static class Statistics {
+		/**
+		 * Number of times the lock was locked
+		 */
+		private long acquisitions;
+
+		/**
+		 * Number of times a thread had to wait
+		 */
+		private long contended;
+
+		/**
+		 * Total time spent waiting, in nanoseconds
+		 */
+		private long waitTime;
+
+		/**
+		 * Longest wait, in nanoseconds
+		 */
+		private long maxWaitTime;
+
+		/**
+		 * Total time the lock was held, in nanoseconds
+		 */
+		private long holdTime;
+
+		/**
+		 * Records that the lock was locked after waiting.
+		 *
+		 * @param waited time waited in nanoseconds, 0 if the thread did not wait
+		 */
+		private void acquired(long waited) {
+			acquisitions++;
+			if (waited > 0) {
+				contended++;
+				waitTime += waited;
+				maxWaitTime = Math.max(maxWaitTime, waited);
 			}
 		}
+
+		/**
+		 * Records that the lock was unlocked.
+		 *
+		 * @param held time held in nanoseconds
+		 */
+		private void released(long held) {
+			holdTime += held;
+		}
+
+		/**
+		 * Adds other statistics to these.
+		 *
+		 * @param other statistics to add
+		 */
+		public void add(Statistics other) {
+			acquisitions += other.acquisitions;
+			contended += other.contended;
+			waitTime += other.waitTime;
+			maxWaitTime = Math.max(maxWaitTime, other.maxWaitTime);
+			holdTime += other.holdTime;
+		}
+
+		/**
+		 * Returns a copy of these statistics.
+		 *
+		 * @return copy of the statistics
+		 */
+		private Statistics copy() {
+			Statistics copy = new Statistics();
+			copy.add(this);
+			return copy;
+		}
+
+		/**
+		 * Returns the number of times the lock was locked, not counting reentrant
+		 * read locks.
+		 *
+		 * @return number of acquisitions
+		 */
+		public long getAcquisitions() {
+			return acquisitions;
+		}
+
+		/**
+		 * Returns the number of times a thread had to wait for the lock.
+		 *
+		 * @return number of contended acquisitions
+		 */
+		public long getContended() {
+			return contended;
+		}
+
+		/**
+		 * Returns the total time threads waited for the lock.
+		 *
+		 * @param unit time unit of the result
+		 * @return total wait time
+		 */
+		public long getWaitTime(TimeUnit unit) {
+			return unit.convert(waitTime, TimeUnit.NANOSECONDS);
+		}
+
+		/**
+		 * Returns the longest time a thread waited for the lock.
+		 *
+		 * @param unit time unit of the result
+		 * @return longest wait time
+		 */
+		public long getMaxWaitTime(TimeUnit unit) {
+			return unit.convert(maxWaitTime, TimeUnit.NANOSECONDS);
+		}
+
+		/**
+		 * Returns the total time the lock was held.
+		 *
+		 * @param unit time unit of the result
+		 * @return total hold time
+		 */
+		public long getHoldTime(TimeUnit unit) {
+			return unit.convert(holdTime, TimeUnit.NANOSECONDS);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("locked %d, waited %d, wait %d ms, max wait %d ms, held %d ms", acquisitions,
+					contended, getWaitTime(TimeUnit.MILLISECONDS), getMaxWaitTime(TimeUnit.MILLISECONDS),
+					getHoldTime(TimeUnit.MILLISECONDS));
+		}
 	}
-}
\ No newline at end of file
+}
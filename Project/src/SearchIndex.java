@@ -0,0 +1,892 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Read-only view of an inverted index that can be searched. It holds the
+ * location table and scores the postings that an index returns through
+ * cursors, so an index only has to say how its words and postings are stored.
+ * Nothing can be added through this class; {@link InvertedIndex} is the index
+ * that is built, and {@link MappedInvertedIndex} serves a saved one.
+ * 
+ * @author isaiahjenkins
+ */
+public abstract class SearchIndex {
+	/**
+	 * Largest number of cursors merged with a heap when scoring.
+	 */
+	protected static final int MERGE_LIMIT = 32;
+
+	/**
+	 * Relative margin kept when pruning by score bounds.
+	 */
+	private static final double EPSILON = 1e-9;
+
+	/**
+	 * Location IDs and counts.
+	 */
+	protected final LocationTableInterface locations;
+
+	/**
+	 * Constructor for an index with a location table.
+	 * 
+	 * @param locations location IDs and counts
+	 */
+	protected SearchIndex(LocationTableInterface locations) {
+		this.locations = locations;
+	}
+
+	/**
+	 * Returns unmodifiable keySet of words in inverted index.
+	 * 
+	 * @return unmodifiable keySet of words in inverted index.
+	 */
+	public abstract Set<String> getWords();
+
+	/**
+	 * Returns unmodifiable positions of words in file.
+	 * 
+	 * @param word stemmed word for index.
+	 * @return unmodifiable keySet of locations for stemmed word.
+	 */
+	public abstract Set<String> getLocations(String word);
+
+	/**
+	 * Returns unmodifiable positions of the partial words in file.
+	 * 
+	 * @param stemmedWord stemmed word for index.
+	 * @return unmodifiable keySet of locations for stemmed word.
+	 */
+	public abstract Set<String> getLocationsPartial(String stemmedWord);
+
+	/**
+	 * Returns unmodifiable positions of words in file.
+	 * 
+	 * @param stemmedWord stemmed word for index.
+	 * @param location    current location for word.
+	 * @return unmodifiable set of positions of words in file.
+	 */
+	public abstract Set<Integer> getPositions(String stemmedWord, String location);
+
+	/**
+	 * Returns true if stemmed word is in index.
+	 * 
+	 * @param word stemmed word for index.
+	 * @return true if stemmed word is in index.
+	 */
+	public abstract boolean contains(String word);
+
+	/**
+	 * Returns true if stemmed word and location is in index.
+	 * 
+	 * @param word     stemmed word for index.
+	 * @param location current location for stemmed word.
+	 * @return true if stemmed word and location is in index.
+	 */
+	public abstract boolean contains(String word, String location);
+
+	/**
+	 * Returns true if stemmed word, location, and position is in index.
+	 * 
+	 * @param word     stemmed word for index.
+	 * @param location current location for stemmed word.
+	 * @param position of stemmed word in location.
+	 * @return true if stemmed word, location, and position is in index.
+	 */
+	public abstract boolean contains(String word, String location, int position);
+
+	/**
+	 * Creates Json for the inverted index.
+	 * 
+	 * @param valueOfFlagIndex the path for index
+	 * @throws IOException error for file
+	 */
+	public abstract void createPrettyJson(Path valueOfFlagIndex) throws IOException;
+
+	/**
+	 * Saves the index to a binary snapshot file.
+	 * 
+	 * @param path the path for the snapshot
+	 * @throws IOException error for file
+	 * @see IndexSnapshot
+	 */
+	public abstract void save(Path path) throws IOException;
+
+	/**
+	 * Returns cursors over the postings of the words matched by the queries, one
+	 * for every query that matches a word.
+	 * 
+	 * @param queries   stemmed query words
+	 * @param exactFlag boolean for exact or partial query
+	 * @return cursors over the postings of the matched words, not started
+	 */
+	protected abstract List<PostingCursor> cursors(Collection<String> queries, boolean exactFlag);
+
+	/**
+	 * Returns a cursor over the postings of a word.
+	 * 
+	 * @param word stemmed word
+	 * @return cursor over the postings, not started, or {@code null} if the word
+	 *         is not in the index
+	 */
+	protected abstract PostingCursor cursor(String word);
+
+	/**
+	 * Returns unmodifiable int of counts for a file.
+	 * 
+	 * @param file current file
+	 * @return unmodifiable int of counts for a file.
+	 */
+	public int getCounts(String file) {
+		int id = locations.getId(file);
+		if (id >= 0) {
+			return locations.getCount(id);
+		}
+		return 0;
+	}
+
+	/**
+	 * Creates Json for words counts.
+	 * 
+	 * @param valueOfFlagCounts the path for counts
+	 * @throws IOException error for file
+	 */
+	public void createCountsJson(Path valueOfFlagCounts) throws IOException {
+		TreeMap<String, Integer> filesAndCounts = new TreeMap<>();
+		for (int id = 0; id < locations.size(); id++) {
+			if (locations.getCount(id) > 0) {
+				filesAndCounts.put(locations.getLocation(id), locations.getCount(id));
+			}
+		}
+		SimpleJsonWriter.asObject(filesAndCounts, valueOfFlagCounts);
+	}
+
+	/**
+	 * Partial search for index by line
+	 * 
+	 * @param queries stemmedLines as list
+	 * @return list of query data for partial search
+	 */
+	public List<QueryData> partialSearch(Collection<String> queries) {
+		return partialSearch(queries, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Partial search for index by line that keeps only the best results
+	 * 
+	 * @param queries stemmedLines as list
+	 * @param k       maximum number of results to return
+	 * @return sorted list of the best query data for partial search
+	 */
+	public List<QueryData> partialSearch(Collection<String> queries, int k) {
+		return score(cursors(queries, false), k);
+	}
+
+	/**
+	 * Exact search for index by line
+	 * 
+	 * @param queries stemmedLines as list
+	 * @return list of query data for exact search
+	 */
+	public List<QueryData> exactSearch(Collection<String> queries) {
+		return exactSearch(queries, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Exact search for index by line that keeps only the best results
+	 * 
+	 * @param queries stemmedLines as list
+	 * @param k       maximum number of results to return
+	 * @return sorted list of the best query data for exact search
+	 */
+	public List<QueryData> exactSearch(Collection<String> queries, int k) {
+		return score(cursors(queries, true), k);
+	}
+
+	/**
+	 * Search for a query with phrase and proximity clauses
+	 * 
+	 * @param query     parsed query
+	 * @param exactFlag boolean for exact or partial query
+	 * @return list of query data for exact or partial search
+	 */
+	public List<QueryData> search(Query query, boolean exactFlag) {
+		return search(query, exactFlag, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Search for a query with required, excluded, phrase and proximity parts that
+	 * keeps only the best results. A location must have every required word,
+	 * none of the excluded words and match every clause; its count is the number
+	 * of positions that take part in clause matches plus the matches of the plain
+	 * words. A query without required words or clauses matches any location with
+	 * any plain word, as before.
+	 * 
+	 * Required words are intersected from the fewest locations to the most, so a
+	 * selective query costs time in proportion to its rarest word.
+	 * 
+	 * @param query     parsed query
+	 * @param exactFlag boolean for exact or partial query
+	 * @param k         maximum number of results to return
+	 * @return sorted list of the best query data for exact or partial search
+	 */
+	public List<QueryData> search(Query query, boolean exactFlag, int k) {
+		List<PostingCursor> cursors = cursors(query.getWords(), exactFlag);
+		if (query.isDisjunctive()) {
+			return score(cursors, k);
+		}
+
+		List<PostingCursor> excluded = cursors(query.getExcluded(), exactFlag);
+		int[] clauseCounts = query.getClauses().isEmpty() ? null : matchClauses(query.getClauses());
+		TopResults results = new TopResults(k);
+
+		if (!query.getRequired().isEmpty()) {
+			// score the candidates by moving every cursor forward to them
+			for (int id : intersect(query.getRequired(), exactFlag)) {
+				if ((clauseCounts != null && clauseCounts[id] == 0) || contains(excluded, id)) {
+					continue;
+				}
+
+				int count = clauseCounts == null ? 0 : clauseCounts[id];
+				for (PostingCursor cursor : cursors) {
+					if (cursor.advance(id) && cursor.id() == id) {
+						count += cursor.count();
+					}
+				}
+				results.add(id, count);
+			}
+			return results.toList();
+		}
+
+		int[] counts = clauseCounts != null ? clauseCounts : new int[locations.size()];
+		for (PostingCursor cursor : cursors) {
+			while (cursor.next()) {
+				if (clauseCounts == null || clauseCounts[cursor.id()] > 0) {
+					counts[cursor.id()] += cursor.count();
+				}
+			}
+		}
+
+		for (int id = 0; id < counts.length; id++) {
+			if (counts[id] > 0 && !contains(excluded, id)) {
+				results.add(id, counts[id]);
+			}
+		}
+		return results.toList();
+	}
+
+	/**
+	 * Returns true if any cursor has a location. The cursors only move forward,
+	 * so locations must be checked in increasing order.
+	 * 
+	 * @param cursors cursors to check
+	 * @param id      location ID
+	 * @return true if a cursor has the location
+	 */
+	private static boolean contains(List<PostingCursor> cursors, int id) {
+		for (PostingCursor cursor : cursors) {
+			if (cursor.advance(id) && cursor.id() == id) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the locations that have every word. The words are sorted by their
+	 * number of locations; the locations of the rarest word are the first
+	 * candidates, and every other word in turn keeps the candidates it has,
+	 * moving its cursor with a galloping search. A partial query word that
+	 * matches several words has all of their locations.
+	 * 
+	 * @param words     stemmed query words
+	 * @param exactFlag boolean for exact or partial query
+	 * @return sorted IDs of the locations that have every word
+	 */
+	private int[] intersect(Collection<String> words, boolean exactFlag) {
+		ArrayList<List<PostingCursor>> groups = new ArrayList<>();
+		for (String word : words) {
+			List<PostingCursor> group = cursors(List.of(word), exactFlag);
+			if (group.isEmpty()) {
+				return new int[0];
+			}
+			groups.add(group);
+		}
+		groups.sort(Comparator.comparingLong(SearchIndex::size));
+
+		int[] candidates = union(groups.get(0));
+		for (int i = 1; i < groups.size() && candidates.length > 0; i++) {
+			List<PostingCursor> group = groups.get(i);
+			int kept = 0;
+
+			if (group.size() == 1) {
+				PostingCursor cursor = group.get(0);
+				for (int id : candidates) {
+					if (cursor.advance(id) && cursor.id() == id) {
+						candidates[kept++] = id;
+					}
+				}
+			} else {
+				int[] other = union(group);
+				int at = 0;
+				for (int id : candidates) {
+					at = PostingList.gallop(other, at, other.length, id);
+					if (at < other.length && other[at] == id) {
+						candidates[kept++] = id;
+					}
+				}
+			}
+
+			candidates = Arrays.copyOf(candidates, kept);
+		}
+
+		return candidates;
+	}
+
+	/**
+	 * Returns the total number of locations of the cursors.
+	 * 
+	 * @param cursors cursors over postings
+	 * @return total number of locations, counting shared locations once per
+	 *         cursor
+	 */
+	private static long size(List<PostingCursor> cursors) {
+		long size = 0;
+		for (PostingCursor cursor : cursors) {
+			size += cursor.size();
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the locations of any of the cursors.
+	 * 
+	 * @param cursors cursors over postings, not started
+	 * @return sorted IDs of the locations, without duplicates
+	 */
+	private static int[] union(List<PostingCursor> cursors) {
+		int[] ids = new int[(int) size(cursors)];
+		int count = 0;
+		for (PostingCursor cursor : cursors) {
+			while (cursor.next()) {
+				ids[count++] = cursor.id();
+			}
+		}
+
+		if (cursors.size() == 1) {
+			return ids;
+		}
+
+		Arrays.sort(ids);
+		int unique = 0;
+		for (int i = 0; i < count; i++) {
+			if (unique == 0 || ids[unique - 1] != ids[i]) {
+				ids[unique++] = ids[i];
+			}
+		}
+		return Arrays.copyOf(ids, unique);
+	}
+
+	/**
+	 * Finds the locations that match every clause. The postings of the clause
+	 * words are intersected by location first, and positions are only merged for
+	 * the locations that have every word.
+	 * 
+	 * @param clauses phrase and proximity clauses
+	 * @return positions taking part in clause matches by location ID, zero for
+	 *         locations that do not match every clause
+	 */
+	private int[] matchClauses(List<Query.Clause> clauses) {
+		int[] counts = new int[locations.size()];
+
+		// one cursor for every distinct clause word
+		ArrayList<String> words = new ArrayList<>();
+		ArrayList<PostingCursor> cursors = new ArrayList<>();
+		int[][] slots = new int[clauses.size()][];
+
+		for (int i = 0; i < clauses.size(); i++) {
+			List<String> clauseWords = clauses.get(i).getWords();
+			slots[i] = new int[clauseWords.size()];
+
+			for (int j = 0; j < clauseWords.size(); j++) {
+				int slot = words.indexOf(clauseWords.get(j));
+				if (slot < 0) {
+					PostingCursor cursor = cursor(clauseWords.get(j));
+					if (cursor == null || !cursor.next()) {
+						return counts;
+					}
+					slot = words.size();
+					words.add(clauseWords.get(j));
+					cursors.add(cursor);
+				}
+				slots[i][j] = slot;
+			}
+		}
+
+		int[][] positions = new int[cursors.size()][];
+		int id = 0;
+		for (PostingCursor cursor : cursors) {
+			id = Math.max(id, cursor.id());
+		}
+
+		while (true) {
+			// move every cursor to the same location
+			boolean aligned = true;
+			for (PostingCursor cursor : cursors) {
+				if (!cursor.advance(id)) {
+					return counts;
+				}
+				if (cursor.id() > id) {
+					id = cursor.id();
+					aligned = false;
+					break;
+				}
+			}
+			if (!aligned) {
+				continue;
+			}
+
+			for (int slot = 0; slot < positions.length; slot++) {
+				positions[slot] = cursors.get(slot).positions().toIntArray();
+			}
+
+			int total = 0;
+			for (int i = 0; i < slots.length; i++) {
+				int[][] clausePositions = new int[slots[i].length][];
+				for (int j = 0; j < slots[i].length; j++) {
+					clausePositions[j] = positions[slots[i][j]];
+				}
+
+				int matches = clauses.get(i).matches(clausePositions);
+				if (matches == 0) {
+					total = 0;
+					break;
+				}
+				total += matches;
+			}
+			counts[id] = total;
+
+			if (!cursors.get(0).next()) {
+				return counts;
+			}
+			id = cursors.get(0).id();
+		}
+	}
+
+	/**
+	 * Scores locations document at a time. The matches of each location are
+	 * summed as a primitive and a result object is only created for a location
+	 * that makes the best k. A word matched by several queries has one cursor
+	 * per query and is counted once for each.
+	 * 
+	 * Up to {@link #MERGE_LIMIT} cursors are merged in location ID order, with
+	 * MaxScore pruning when only the best k are needed. Wide prefixes expand to
+	 * more cursors than that, and then a step per posting costs more than one
+	 * pass over the locations, so the matches are summed into an array indexed by
+	 * location ID instead.
+	 * 
+	 * @param cursors cursors over the postings of the matched words, not started
+	 * @param k       maximum number of results to return
+	 * @return sorted list of the best query data
+	 */
+	protected List<QueryData> score(List<PostingCursor> cursors, int k) {
+		TopResults results = new TopResults(k);
+
+		if (cursors.size() > MERGE_LIMIT) {
+			int[] counts = new int[locations.size()];
+			for (PostingCursor cursor : cursors) {
+				while (cursor.next()) {
+					counts[cursor.id()] += cursor.count();
+				}
+			}
+
+			for (int id = 0; id < counts.length; id++) {
+				if (counts[id] > 0) {
+					results.add(id, counts[id]);
+				}
+			}
+			return results.toList();
+		}
+
+		if (results.isBounded()) {
+			maxScore(cursors, results);
+			return results.toList();
+		}
+
+		PostingCursor[] heap = new PostingCursor[cursors.size()];
+		int size = 0;
+		for (PostingCursor cursor : cursors) {
+			if (cursor.next()) {
+				heap[size++] = cursor;
+			}
+		}
+		for (int i = size / 2 - 1; i >= 0; i--) {
+			siftDown(heap, size, i);
+		}
+
+		while (size > 0) {
+			int id = heap[0].id();
+			int count = 0;
+
+			while (size > 0 && heap[0].id() == id) {
+				count += heap[0].count();
+				if (!heap[0].next()) {
+					heap[0] = heap[--size];
+				}
+				siftDown(heap, size, 0);
+			}
+
+			results.add(id, count);
+		}
+
+		return results.toList();
+	}
+
+	/**
+	 * Scores locations with MaxScore pruning. The score of a location is the sum
+	 * of what each word adds to it, so once the best k are known, the words whose
+	 * bounds add up to less than the worst kept score cannot bring a new location
+	 * into the best k on their own. Only the other, essential words are merged to
+	 * find candidate locations, and the rest are only advanced to a candidate
+	 * while it can still make the best k.
+	 * 
+	 * @param list    cursors over the postings of the matched words, not started
+	 * @param results best results to add to
+	 */
+	private void maxScore(List<PostingCursor> list, TopResults results) {
+		PostingCursor[] cursors = list.toArray(new PostingCursor[0]);
+		Arrays.sort(cursors, Comparator.comparingDouble(PostingCursor::bound));
+
+		int size = cursors.length;
+		double[] bounds = new double[size];
+		boolean[] live = new boolean[size];
+		double sum = 0;
+		for (int i = 0; i < size; i++) {
+			sum += cursors[i].bound();
+			bounds[i] = sum;
+			live[i] = cursors[i].next();
+		}
+
+		// cursors before the first essential cursor cannot add a location alone
+		int essential = 0;
+
+		while (true) {
+			double threshold = results.threshold();
+			while (essential < size && below(bounds[essential], threshold)) {
+				essential++;
+			}
+
+			int id = Integer.MAX_VALUE;
+			for (int i = essential; i < size; i++) {
+				if (live[i] && cursors[i].id() < id) {
+					id = cursors[i].id();
+				}
+			}
+			if (id == Integer.MAX_VALUE) {
+				return;
+			}
+
+			int count = 0;
+			for (int i = essential; i < size; i++) {
+				if (live[i] && cursors[i].id() == id) {
+					count += cursors[i].count();
+					live[i] = cursors[i].next();
+				}
+			}
+
+			double length = locations.getCount(id);
+			boolean candidate = true;
+			for (int i = essential - 1; i >= 0 && candidate; i--) {
+				if (below(count / length + bounds[i], threshold)) {
+					candidate = false;
+				} else if (live[i]) {
+					live[i] = cursors[i].advance(id);
+					if (live[i] && cursors[i].id() == id) {
+						count += cursors[i].count();
+					}
+				}
+			}
+
+			if (candidate) {
+				results.add(id, count);
+			}
+		}
+	}
+
+	/**
+	 * Returns true if a score bound is certainly below a threshold, leaving a
+	 * margin for rounding in the sums of bounds.
+	 * 
+	 * @param bound     sum of score bounds
+	 * @param threshold worst kept score
+	 * @return true if the bound is below the threshold by more than the margin
+	 */
+	private static boolean below(double bound, double threshold) {
+		return bound * (1 + EPSILON) < threshold;
+	}
+
+	/**
+	 * Restores the heap order of cursors by location ID below an index.
+	 * 
+	 * @param heap  cursors ordered as a binary min-heap
+	 * @param size  number of cursors in the heap
+	 * @param index index to sift down from
+	 */
+	private static void siftDown(PostingCursor[] heap, int size, int index) {
+		PostingCursor cursor = heap[index];
+		int child;
+
+		while ((child = 2 * index + 1) < size) {
+			if (child + 1 < size && heap[child + 1].id() < heap[child].id()) {
+				child++;
+			}
+			if (cursor.id() <= heap[child].id()) {
+				break;
+			}
+			heap[index] = heap[child];
+			index = child;
+		}
+
+		heap[index] = cursor;
+	}
+
+	/**
+	 * Search for index by line
+	 * 
+	 * @param queries   stemmedLines as list
+	 * @param exactFlag boolean for exact or partial query
+	 * @return list of query data for exact or partial search
+	 */
+	public List<QueryData> search(Collection<String> queries, boolean exactFlag) {
+		return exactFlag ? exactSearch(queries) : partialSearch(queries);
+	}
+
+	/**
+	 * Search for index by line that keeps only the best results
+	 * 
+	 * @param queries   stemmedLines as list
+	 * @param exactFlag boolean for exact or partial query
+	 * @param k         maximum number of results to return
+	 * @return sorted list of the best query data for exact or partial search
+	 */
+	public List<QueryData> search(Collection<String> queries, boolean exactFlag, int k) {
+		return exactFlag ? exactSearch(queries, k) : partialSearch(queries, k);
+	}
+
+	/**
+	 * Collects the best k scored locations, creating query data only for
+	 * locations that make the best k so far.
+	 */
+	private class TopResults {
+		/** Maximum number of results */
+		private final int k;
+
+		/** All results, when every location fits in k */
+		private final ArrayList<QueryData> all;
+
+		/** Best results with the worst at the head, when k is smaller */
+		private final PriorityQueue<QueryData> best;
+
+		/**
+		 * Constructor for top results
+		 * 
+		 * @param k maximum number of results
+		 */
+		public TopResults(int k) {
+			this.k = k;
+			boolean bounded = k < locations.size();
+			this.all = bounded ? null : new ArrayList<>();
+			this.best = bounded ? new PriorityQueue<>(k + 1, Collections.reverseOrder()) : null;
+		}
+
+		/**
+		 * Adds a scored location.
+		 * 
+		 * @param id    location ID
+		 * @param count total matches in the location
+		 */
+		public void add(int id, int count) {
+			if (all != null) {
+				all.add(new QueryData(id, count));
+			} else if (best.size() < k) {
+				best.add(new QueryData(id, count));
+			} else if (k > 0 && best.peek().compareTo(id, count) > 0) {
+				best.poll();
+				best.add(new QueryData(id, count));
+			}
+		}
+
+		/**
+		 * Returns true if only the best k of the locations are kept.
+		 * 
+		 * @return true if the results are bounded by k
+		 */
+		public boolean isBounded() {
+			return best != null;
+		}
+
+		/**
+		 * Returns the score a location must reach to be added, which is the worst
+		 * kept score once k results are kept.
+		 * 
+		 * @return the worst kept score, or negative infinity while there is room
+		 */
+		public double threshold() {
+			if (best == null || best.size() < k) {
+				return Double.NEGATIVE_INFINITY;
+			}
+			return k == 0 ? Double.POSITIVE_INFINITY : best.peek().getScore();
+		}
+
+		/**
+		 * Returns the results in sorted order.
+		 * 
+		 * @return sorted list of at most k query data
+		 */
+		public List<QueryData> toList() {
+			ArrayList<QueryData> results = all != null ? all : new ArrayList<>(best);
+			Collections.sort(results);
+			return results;
+		}
+	}
+
+	/**
+	 * Returns the score of a location with a number of matches.
+	 * 
+	 * @param id    location ID
+	 * @param count total matches in the location
+	 * @return matches divided by the word count of the location
+	 */
+	private double score(int id, int count) {
+		return (double) count / locations.getCount(id);
+	}
+
+	/**
+	 * Query class for queried searches
+	 */
+	public class QueryData implements Comparable<QueryData> {
+
+		/**
+		 * location ID of queried search
+		 */
+		private final int where;
+		/**
+		 * count of queried search
+		 */
+		private int count;
+		/**
+		 * score of queried search
+		 */
+		private double score;
+
+		/**
+		 * Constructor for query class
+		 * 
+		 * @param id    location ID to query
+		 * @param count total matches in the location
+		 */
+		public QueryData(int id, int count) {
+			this.count = count;
+			this.score = score(id, count);
+			this.where = id;
+		}
+
+		/**
+		 * Return location of query search
+		 * 
+		 * @return location of query search
+		 */
+		public String getWhere() {
+			return locations.getLocation(this.where);
+		}
+
+		/**
+		 * Return location ID of query search
+		 * 
+		 * @return location ID of query search
+		 */
+		public int getId() {
+			return this.where;
+		}
+
+		/**
+		 * Returns total matches of total matches
+		 * 
+		 * @return totals matches
+		 */
+		public int getCount() {
+			return this.count;
+		}
+
+		/**
+		 * Gets score
+		 * 
+		 * @return score
+		 */
+		public double getScore() {
+			return this.score;
+		}
+
+		/**
+		 * Compares this query data to a location that has no query data yet, in
+		 * the same order as {@link #compareTo(QueryData)}.
+		 * 
+		 * @param id    location ID
+		 * @param count total matches in the location
+		 * @return compare value to order data
+		 */
+		private int compareTo(int id, int count) {
+			int comparedScore = Double.compare(score(id, count), getScore());
+			if (comparedScore != 0) {
+				return comparedScore;
+			}
+
+			int comparedCount = Integer.compare(count, getCount());
+			if (comparedCount != 0) {
+				return comparedCount;
+			}
+
+			return where == id ? 0 : getWhere().compareTo(locations.getLocation(id));
+		}
+
+		/**
+		 * Compare to function that compares and orders query data.
+		 * 
+		 * @param other compares values of query class
+		 * @return compare value to order data
+		 */
+		@Override
+		public int compareTo(QueryData other) {
+			int comparedScore = Double.compare(getScore(), other.getScore());
+			int comparedCount = Integer.compare(getCount(), other.getCount());
+			int comparedWhere = where == other.where ? 0 : getWhere().compareTo(other.getWhere());
+
+			if (comparedScore != 0) {
+				if (comparedScore > 0) {
+					return -1;
+				} else if (comparedScore < 0) {
+					return 1;
+				}
+
+			} else {
+				if (comparedCount != 0) {
+					if (comparedCount > 0) {
+						return -1;
+					} else if (comparedCount < 0) {
+						return 1;
+					}
+				}
+				return comparedWhere;
+			}
+			return comparedWhere;
+		}
+	}
+}
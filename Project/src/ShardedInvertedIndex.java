@@ -0,0 +1,586 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Thread safe inverted index split into shards by the hash of each word. Every
+ * shard is an index with its own lock, and the shards share one thread safe
+ * location table for IDs and counts. Merges lock one shard at a time, so merges
+ * of different words run in parallel, and searches only lock the shards that
+ * hold their words. When several shards are locked at once they are always
+ * locked in increasing order.
+ *
+ * Score bounds are cached per shard, so a merge into another shard can raise
+ * the word count of a location after the bound was computed. That only lowers
+ * the true scores, so the cached bound is still an upper bound.
+ *
+ * The shards hold all the postings, so this index is not an
+ * {@link InvertedIndex} itself, and has no lock of its own.
+ *
+ * @author isaiahjenkins
+ */
+public class ShardedInvertedIndex extends WritableIndex {
+
+	/**
+	 * The shards, each holding the words that hash to it.
+	 */
+	private final InvertedIndex[] shards;
+
+	/**
+	 * Lock for each shard.
+	 */
+	private final ReadWriteLock[] locks;
+
+	/**
+	 * Indexes of every shard in order.
+	 */
+	private final int[] all;
+
+	/**
+	 * Constructor for Sharded Inverted Index class.
+	 *
+	 * @param count      number of shards
+	 * @param compressed whether to compress postings
+	 */
+	public ShardedInvertedIndex(int count, boolean compressed) {
+		this(new ThreadSafeLocationTable(), count, compressed);
+	}
+
+	/**
+	 * Constructor for Sharded Inverted Index class.
+	 *
+	 * @param locations  location table shared by every shard
+	 * @param count      number of shards
+	 * @param compressed whether to compress postings
+	 */
+	private ShardedInvertedIndex(LocationTableInterface locations, int count, boolean compressed) {
+		super(locations);
+		shards = new InvertedIndex[Math.max(count, 1)];
+		locks = new ReadWriteLock[shards.length];
+		all = new int[shards.length];
+
+		for (int i = 0; i < shards.length; i++) {
+			shards[i] = new InvertedIndex(locations, compressed);
+			locks[i] = new ReadWriteLock();
+			all[i] = i;
+		}
+	}
+
+	/**
+	 * Returns the index of the shard that holds a word.
+	 *
+	 * @param word stemmed word
+	 * @return index of the shard
+	 */
+	private int shard(String word) {
+		int hash = word.hashCode();
+		return Math.floorMod(hash ^ (hash >>> 16), shards.length);
+	}
+
+	/**
+	 * Returns the indexes of the shards that hold any of the words, in order.
+	 *
+	 * @param words stemmed words
+	 * @return sorted indexes of the shards
+	 */
+	private int[] shards(Collection<String> words) {
+		boolean[] hit = new boolean[shards.length];
+		int count = 0;
+		for (String word : words) {
+			int shard = shard(word);
+			if (!hit[shard]) {
+				hit[shard] = true;
+				count++;
+			}
+		}
+
+		int[] found = new int[count];
+		for (int i = 0, j = 0; i < hit.length; i++) {
+			if (hit[i]) {
+				found[j++] = i;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Returns the indexes of the shards a query reads.
+	 *
+	 * @param query     parsed query
+	 * @param exactFlag boolean for exact or partial query
+	 * @return sorted indexes of the shards
+	 */
+	private int[] shards(Query query, boolean exactFlag) {
+		if (!exactFlag) {
+			// words starting with a prefix can be in any shard
+			return all;
+		}
+
+		ArrayList<String> words = new ArrayList<>(query.getWords());
+		words.addAll(query.getExcluded());
+		for (Query.Clause clause : query.getClauses()) {
+			words.addAll(clause.getWords());
+		}
+		return shards(words);
+	}
+
+	/**
+	 * Locks the read locks of shards in order.
+	 *
+	 * @param hit sorted indexes of the shards
+	 */
+	private void readLock(int[] hit) {
+		for (int shard : hit) {
+			locks[shard].readLock().lock();
+		}
+	}
+
+	/**
+	 * Unlocks the read locks of shards in reverse order.
+	 *
+	 * @param hit sorted indexes of the shards
+	 */
+	private void readUnlock(int[] hit) {
+		for (int i = hit.length - 1; i >= 0; i--) {
+			locks[hit[i]].readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns how often and how long the shard locks were waited for and held,
+	 * summed over every shard.
+	 *
+	 * @return summary of the shard lock statistics
+	 */
+	public String getLockStatistics() {
+		ReadWriteLock.Statistics reads = new ReadWriteLock.Statistics();
+		ReadWriteLock.Statistics writes = new ReadWriteLock.Statistics();
+		int peak = 0;
+		for (ReadWriteLock shardLock : locks) {
+			reads.add(shardLock.getReadStatistics());
+			writes.add(shardLock.getWriteStatistics());
+			peak = Math.max(peak, shardLock.getPeakQueueLength());
+		}
+		return String.format("%d shards: read [%s], write [%s], peak waiting %d", shards.length, reads, writes, peak);
+	}
+
+	/**
+	 * Returns a view of the postings of every shard, sorted by word, without
+	 * copying them. The caller must hold the read lock of every shard while using
+	 * it.
+	 *
+	 * @return postings of every shard by word
+	 */
+	private AbstractMap<String, PostingList> postings() {
+		return new MergedPostings();
+	}
+
+	/**
+	 * Helper method to traverse through the directory and its subdirectories to
+	 * retrieve the worded index.
+	 *
+	 * @param word     stemmed word
+	 * @param location current file
+	 * @param position current word position in file
+	 * @throws IOException error for file
+	 */
+	@Override
+	public void add(String word, String location, int position) throws IOException {
+		int shard = shard(word);
+		locks[shard].writeLock().lock();
+		try {
+			shards[shard].add(word, location, position);
+		} finally {
+			locks[shard].writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Add all method to add all the positions and counts to inverted index. The
+	 * counts are merged first, then the words of each shard under that shard's
+	 * lock only.
+	 *
+	 * @param localIndex local index when used in multithreaded builder index
+	 */
+	@Override
+	public void addAll(InvertedIndex localIndex) {
+		int[] remap = addLocations(localIndex);
+
+		ArrayList<List<String>> words = new ArrayList<>(shards.length);
+		for (int i = 0; i < shards.length; i++) {
+			words.add(new ArrayList<>());
+		}
+		for (String word : localIndex.getWords()) {
+			words.get(shard(word)).add(word);
+		}
+
+		for (int shard = 0; shard < shards.length; shard++) {
+			if (words.get(shard).isEmpty()) {
+				continue;
+			}
+
+			locks[shard].writeLock().lock();
+			try {
+				shards[shard].addPostings(localIndex, words.get(shard), remap);
+			} finally {
+				locks[shard].writeLock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * Returns unmodifiable set of words in inverted index.
+	 *
+	 * @return unmodifiable sorted set of words in inverted index.
+	 */
+	@Override
+	public Set<String> getWords() {
+		readLock(all);
+		try {
+			TreeSet<String> words = new TreeSet<>();
+			for (InvertedIndex shard : shards) {
+				words.addAll(shard.getWords());
+			}
+			return Collections.unmodifiableSet(words);
+		} finally {
+			readUnlock(all);
+		}
+	}
+
+	/**
+	 * Returns unmodifiable positions of words in file.
+	 *
+	 * @param word stemmed word for index.
+	 * @return unmodifiable keySet of locations for stemmed word.
+	 */
+	@Override
+	public Set<String> getLocations(String word) {
+		int shard = shard(word);
+		locks[shard].readLock().lock();
+		try {
+			return shards[shard].getLocations(word);
+		} finally {
+			locks[shard].readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns unmodifiable positions of the partial words in file.
+	 *
+	 * @param stemmedWord stemmed word for index.
+	 * @return unmodifiable keySet of locations for stemmed word.
+	 */
+	@Override
+	public Set<String> getLocationsPartial(String stemmedWord) {
+		readLock(all);
+		try {
+			TreeSet<String> allFiles = new TreeSet<>();
+			for (InvertedIndex shard : shards) {
+				allFiles.addAll(shard.getLocationsPartial(stemmedWord));
+			}
+			return Collections.unmodifiableSet(allFiles);
+		} finally {
+			readUnlock(all);
+		}
+	}
+
+	/**
+	 * Returns unmodifiable positions of words in file.
+	 *
+	 * @param stemmedWord stemmed word for index.
+	 * @param location    current location for word.
+	 * @return unmodifiable set of positions of words in file.
+	 */
+	@Override
+	public Set<Integer> getPositions(String stemmedWord, String location) {
+		int shard = shard(stemmedWord);
+		locks[shard].readLock().lock();
+		try {
+			return shards[shard].getPositions(stemmedWord, location);
+		} finally {
+			locks[shard].readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns true if stemmed word is in index.
+	 *
+	 * @param word stemmed word for index.
+	 * @return true if stemmed word is in index.
+	 */
+	@Override
+	public boolean contains(String word) {
+		int shard = shard(word);
+		locks[shard].readLock().lock();
+		try {
+			return shards[shard].contains(word);
+		} finally {
+			locks[shard].readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns true if stemmed word and location is in index.
+	 *
+	 * @param word     stemmed word for index.
+	 * @param location current location for stemmed word.
+	 * @return true if stemmed word and location is in index.
+	 */
+	@Override
+	public boolean contains(String word, String location) {
+		int shard = shard(word);
+		locks[shard].readLock().lock();
+		try {
+			return shards[shard].contains(word, location);
+		} finally {
+			locks[shard].readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns true if stemmed word, location, and position is in index.
+	 *
+	 * @param word     stemmed word for index.
+	 * @param location current location for stemmed word.
+	 * @param position of stemmed word in location.
+	 * @return true if stemmed word, location, and position is in index.
+	 */
+	@Override
+	public boolean contains(String word, String location, int position) {
+		int shard = shard(word);
+		locks[shard].readLock().lock();
+		try {
+			return shards[shard].contains(word, location, position);
+		} finally {
+			locks[shard].readLock().unlock();
+		}
+	}
+
+	/*
+	 * Returns toString output of inverted index.
+	 *
+	 * @return invertedIndex toString output of inverted index.
+	 */
+	@Override
+	public String toString() {
+		readLock(all);
+		try {
+			return asLocationView(postings()).toString();
+		} finally {
+			readUnlock(all);
+		}
+	}
+
+	/**
+	 * Creates Json for the inverted index.
+	 *
+	 * @param valueOfFlagIndex the path for index
+	 * @throws IOException error for file
+	 */
+	@Override
+	public void createPrettyJson(Path valueOfFlagIndex) throws IOException {
+		readLock(all);
+		try {
+			SimpleJsonWriter.asInvertedIndex(asLocationView(postings()), valueOfFlagIndex);
+		} finally {
+			readUnlock(all);
+		}
+	}
+
+	/**
+	 * Saves the index to a binary snapshot file.
+	 *
+	 * @param path the path for the snapshot
+	 * @throws IOException error for file
+	 */
+	@Override
+	public void save(Path path) throws IOException {
+		readLock(all);
+		try {
+			IndexSnapshot.write(postings(), locations, path);
+		} finally {
+			readUnlock(all);
+		}
+	}
+
+	/**
+	 * Partial search for index by line that keeps only the best results
+	 *
+	 * @param queries stemmedLines as list
+	 * @param k       maximum number of results to return
+	 * @return sorted list of the best query data for partial search
+	 */
+	@Override
+	public List<QueryData> partialSearch(Collection<String> queries, int k) {
+		readLock(all);
+		try {
+			return super.partialSearch(queries, k);
+		} finally {
+			readUnlock(all);
+		}
+	}
+
+	/**
+	 * Exact search for index by line that keeps only the best results
+	 *
+	 * @param queries stemmedLines as list
+	 * @param k       maximum number of results to return
+	 * @return sorted list of the best query data for exact search
+	 */
+	@Override
+	public List<QueryData> exactSearch(Collection<String> queries, int k) {
+		int[] hit = shards(queries);
+		readLock(hit);
+		try {
+			return super.exactSearch(queries, k);
+		} finally {
+			readUnlock(hit);
+		}
+	}
+
+	/**
+	 * Search for a query with phrase and proximity clauses that keeps only the
+	 * best results
+	 *
+	 * @param query     parsed query
+	 * @param exactFlag boolean for exact or partial query
+	 * @param k         maximum number of results to return
+	 * @return sorted list of the best query data for exact or partial search
+	 */
+	@Override
+	public List<QueryData> search(Query query, boolean exactFlag, int k) {
+		int[] hit = shards(query, exactFlag);
+		readLock(hit);
+		try {
+			return super.search(query, exactFlag, k);
+		} finally {
+			readUnlock(hit);
+		}
+	}
+
+	/**
+	 * Returns cursors over the postings of the words matched by the queries from
+	 * the shards that hold them. The caller must hold the read locks of those
+	 * shards.
+	 *
+	 * @param queries   stemmed query words
+	 * @param exactFlag boolean for exact or partial query
+	 * @return cursors over the postings of the matched words, not started
+	 */
+	@Override
+	protected List<PostingCursor> cursors(Collection<String> queries, boolean exactFlag) {
+		ArrayList<PostingCursor> cursors = new ArrayList<>();
+
+		if (exactFlag) {
+			for (String word : queries) {
+				PostingCursor cursor = cursor(word);
+				if (cursor != null) {
+					cursors.add(cursor);
+				}
+			}
+		} else {
+			for (InvertedIndex shard : shards) {
+				cursors.addAll(shard.cursors(queries, false));
+			}
+		}
+
+		return cursors;
+	}
+
+	/**
+	 * Returns a cursor over the postings of a word from the shard that holds it.
+	 * The caller must hold the read lock of that shard.
+	 *
+	 * @param word stemmed word
+	 * @return cursor over the postings, not started, or {@code null} if the word
+	 *         is not in the index
+	 */
+	@Override
+	protected PostingCursor cursor(String word) {
+		return shards[shard(word)].cursor(word);
+	}
+
+	/**
+	 * Read-only view of the postings of every shard by word. No word is in two
+	 * shards, so iterating merges the sorted words of the shards as it goes,
+	 * instead of building one map of every word.
+	 */
+	private class MergedPostings extends AbstractMap<String, PostingList> {
+		@Override
+		public Set<Entry<String, PostingList>> entrySet() {
+			return new AbstractSet<Entry<String, PostingList>>() {
+				@Override
+				public Iterator<Entry<String, PostingList>> iterator() {
+					// the next word of each shard, smallest first
+					PriorityQueue<ShardWords> heads = new PriorityQueue<>(
+							Comparator.comparing((ShardWords words) -> words.head.getKey()));
+					for (InvertedIndex shard : shards) {
+						Iterator<Entry<String, PostingList>> itr = shard.postings().entrySet().iterator();
+						if (itr.hasNext()) {
+							heads.add(new ShardWords(itr));
+						}
+					}
+
+					return new Iterator<Entry<String, PostingList>>() {
+						@Override
+						public boolean hasNext() {
+							return !heads.isEmpty();
+						}
+
+						@Override
+						public Entry<String, PostingList> next() {
+							ShardWords words = heads.poll();
+							Entry<String, PostingList> entry = words.head;
+							if (words.rest.hasNext()) {
+								words.head = words.rest.next();
+								heads.add(words);
+							}
+							return entry;
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					int size = 0;
+					for (InvertedIndex shard : shards) {
+						size += shard.postings().size();
+					}
+					return size;
+				}
+			};
+		}
+	}
+
+	/**
+	 * The words of a shard that have not been merged yet.
+	 */
+	private static class ShardWords {
+		/** Next word of the shard */
+		private Map.Entry<String, PostingList> head;
+
+		/** Words of the shard after the next one */
+		private final Iterator<Map.Entry<String, PostingList>> rest;
+
+		/**
+		 * Constructor for the words of a shard.
+		 *
+		 * @param rest words of the shard, at least one
+		 */
+		public ShardWords(Iterator<Map.Entry<String, PostingList>> rest) {
+			this.rest = rest;
+			this.head = rest.next();
+		}
+	}
+}
@@ -12,7 +12,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TreeMap;
-import java.util.TreeSet;
 
 /**
  * Outputs several simple data structures in "pretty" JSON format where newlines
@@ -239,26 +238,27 @@ public class SimpleJsonWriter {
 	 * @param level         the initial indent level
 	 * @throws IOException exception for file error
 	 */
-	public static void asInvertedIndex(TreeMap<String, TreeMap<String, TreeSet<Integer>>> invertedIndex, Writer writer,
-			int level) throws IOException {
-		Iterator<Entry<String, TreeMap<String, TreeSet<Integer>>>> itr = invertedIndex.entrySet().iterator();
-		String stemmedWord = null;
+	public static void asInvertedIndex(Map<String, ? extends Map<String, ? extends Collection<Integer>>> invertedIndex,
+			Writer writer, int level) throws IOException {
+		Iterator<? extends Entry<String, ? extends Map<String, ? extends Collection<Integer>>>> itr = invertedIndex
+				.entrySet().iterator();
+		Entry<String, ? extends Map<String, ? extends Collection<Integer>>> stemmedWord = null;
 		writer.write("{\n");
 		indent(writer, 1);
 
 		if (itr.hasNext()) {
-			stemmedWord = itr.next().getKey();
-			quote(stemmedWord, writer, 1);
+			stemmedWord = itr.next();
+			quote(stemmedWord.getKey(), writer, 1);
 			writer.write(": ");
-			asNestedObject(invertedIndex.get(stemmedWord), writer, level);
+			asNestedObject(stemmedWord.getValue(), writer, level);
 		}
 
 		while (itr.hasNext()) {
-			stemmedWord = itr.next().getKey();
+			stemmedWord = itr.next();
 			writer.write(",\n");
-			quote(stemmedWord, writer, 1);
+			quote(stemmedWord.getKey(), writer, 1);
 			writer.write(": ");
-			asNestedObject(invertedIndex.get(stemmedWord), writer, level);
+			asNestedObject(stemmedWord.getValue(), writer, level);
 		}
 
 		writer.write("\n");
@@ -276,8 +276,8 @@ public class SimpleJsonWriter {
 	 *
 	 * @see #asObject(Map, Writer, int)
 	 */
-	public static void asInvertedIndex(TreeMap<String, TreeMap<String, TreeSet<Integer>>> invertedIndex, Path path)
-			throws IOException {
+	public static void asInvertedIndex(Map<String, ? extends Map<String, ? extends Collection<Integer>>> invertedIndex,
+			Path path) throws IOException {
 		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
 			// StringWriter writer = new StringWriter();
 			asInvertedIndex(invertedIndex, writer, 0);
@@ -293,10 +293,10 @@ public class SimpleJsonWriter {
 	 * @param level     the initial indent level
 	 * @throws IOException exception for file error
 	 */
-	public static void asNestedQueries(List<InvertedIndex.QueryData> arrayList, Writer writer, int level)
+	public static void asNestedQueries(List<SearchIndex.QueryData> arrayList, Writer writer, int level)
 			throws IOException {
-		Iterator<InvertedIndex.QueryData> itr = arrayList.iterator();
-		InvertedIndex.QueryData instance = null;
+		Iterator<SearchIndex.QueryData> itr = arrayList.iterator();
+		SearchIndex.QueryData instance = null;
 		writer.write("[\n");
 
 		if (itr.hasNext()) {
@@ -361,18 +361,18 @@ public class SimpleJsonWriter {
 	 * @throws IOException exception for file error
 	 */
 
-	public static void asQuery(TreeMap<String, List<InvertedIndex.QueryData>> queriesAndResults, Writer writer,
+	public static void asQuery(TreeMap<String, List<SearchIndex.QueryData>> queriesAndResults, Writer writer,
 			int level)
 			throws IOException {
 
-		Iterator<Entry<String, List<InvertedIndex.QueryData>>> itr = queriesAndResults.entrySet().iterator();
+		Iterator<Entry<String, List<SearchIndex.QueryData>>> itr = queriesAndResults.entrySet().iterator();
 		String stemmedWord = null;
 		writer.write("{\n");
 		indent(writer, 1);
 
 		if (itr.hasNext()) {
 			stemmedWord = itr.next().getKey();
-			quote(stemmedWord, writer);
+			quote(escape(stemmedWord), writer);
 			writer.write(": ");
 			asNestedQueries(queriesAndResults.get(stemmedWord), writer, level);
 		}
@@ -380,7 +380,7 @@ public class SimpleJsonWriter {
 		while (itr.hasNext()) {
 			stemmedWord = itr.next().getKey();
 			writer.write(",\n");
-			quote(stemmedWord, writer, 1);
+			quote(escape(stemmedWord), writer, 1);
 			writer.write(": ");
 			asNestedQueries(queriesAndResults.get(stemmedWord), writer, level);
 		}
@@ -400,7 +400,7 @@ public class SimpleJsonWriter {
 	 * @see #asObject(Map, Writer, int)
 	 */
 
-	public static void asQuery(TreeMap<String, List<InvertedIndex.QueryData>> queriesAndResults, Path path)
+	public static void asQuery(TreeMap<String, List<SearchIndex.QueryData>> queriesAndResults, Path path)
 			throws IOException {
 		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
 			// StringWriter writer = new StringWriter();
@@ -409,6 +409,17 @@ public class SimpleJsonWriter {
 
 	}
 
+	/**
+	 * Escapes the backslashes and quotation marks of a JSON string, such as the
+	 * quoted phrases of a query.
+	 *
+	 * @param element the string to escape
+	 * @return the escaped string
+	 */
+	private static String escape(String element) {
+		return element.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+
 	/**
 	 * Writes the {@code \t} tab symbol by the number of times specified.
 	 *
@@ -0,0 +1,298 @@
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Sorted, front-coded word dictionary read in place from a buffer. Words are
+ * stored in blocks of {@link #BLOCK_SIZE}. The first word of a block is stored
+ * in full, and every other word as the number of leading UTF-8 bytes it shares
+ * with the word before it followed by the rest of its bytes. A directory holds
+ * the offset of every block, so lookups binary search the first words of the
+ * blocks and only decode a single block.
+ *
+ * Words are identified by their ordinal, their index in sorted order.
+ *
+ * <pre>
+ * block:     length, UTF-8 bytes of the first word, then for each other word:
+ *            shared length, suffix length, suffix UTF-8 bytes
+ * directory: for each block: offset of the block
+ * </pre>
+ *
+ * @author isaiahjenkins
+ */
+public class TermDictionary implements Iterable<String> {
+
+	/**
+	 * Number of words in each block.
+	 */
+	public static final int BLOCK_SIZE = 16;
+
+	/**
+	 * Buffer holding the blocks and the directory.
+	 */
+	private final ByteBuffer buffer;
+
+	/**
+	 * Offset of the block directory in the buffer.
+	 */
+	private final int directoryOffset;
+
+	/**
+	 * Number of words.
+	 */
+	private final int size;
+
+	/**
+	 * Constructor for a dictionary stored in a buffer.
+	 *
+	 * @param buffer          buffer holding the blocks and the directory
+	 * @param directoryOffset offset of the block directory in the buffer
+	 * @param size            number of words
+	 */
+	public TermDictionary(ByteBuffer buffer, long directoryOffset, int size) {
+		this.buffer = buffer;
+		this.directoryOffset = (int) directoryOffset;
+		this.size = size;
+	}
+
+	/**
+	 * Writes sorted words as front-coded blocks.
+	 *
+	 * @param out   output to write to
+	 * @param words words in sorted order
+	 * @param count number of words
+	 * @return offset of every block relative to the first byte written
+	 * @throws IOException error for file
+	 */
+	public static long[] write(DataOutput out, Iterable<String> words, int count) throws IOException {
+		long[] blockOffsets = new long[(count + BLOCK_SIZE - 1) / BLOCK_SIZE];
+		byte[] previous = new byte[0];
+		long written = 0;
+		int ordinal = 0;
+
+		for (String word : words) {
+			byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+
+			if (ordinal % BLOCK_SIZE == 0) {
+				blockOffsets[ordinal / BLOCK_SIZE] = written;
+				VByte.write(out, bytes.length);
+				out.write(bytes);
+				written += VByte.size(bytes.length) + bytes.length;
+			} else {
+				int shared = Arrays.mismatch(previous, bytes);
+				shared = shared < 0 ? bytes.length : shared;
+				int suffix = bytes.length - shared;
+				VByte.write(out, shared);
+				VByte.write(out, suffix);
+				out.write(bytes, shared, suffix);
+				written += VByte.size(shared) + VByte.size(suffix) + suffix;
+			}
+
+			previous = bytes;
+			ordinal++;
+		}
+
+		return blockOffsets;
+	}
+
+	/**
+	 * Returns the first string greater than every string that starts with the
+	 * prefix, so that the words starting with the prefix are exactly the words
+	 * from the prefix (inclusive) to the end (exclusive).
+	 *
+	 * @param prefix the prefix
+	 * @return end of the prefix range, or {@code null} if the range has no end
+	 */
+	public static String prefixEnd(String prefix) {
+		int end = prefix.length();
+		while (end > 0 && prefix.charAt(end - 1) == Character.MAX_VALUE) {
+			end--;
+		}
+
+		if (end == 0) {
+			return null;
+		}
+		return prefix.substring(0, end - 1) + (char) (prefix.charAt(end - 1) + 1);
+	}
+
+	/**
+	 * Returns the number of words.
+	 *
+	 * @return number of words
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the word with an ordinal.
+	 *
+	 * @param ordinal ordinal of the word
+	 * @return the word
+	 */
+	public String get(int ordinal) {
+		if (ordinal < 0 || ordinal >= size) {
+			throw new IndexOutOfBoundsException(ordinal);
+		}
+
+		BlockReader reader = new BlockReader(ordinal / BLOCK_SIZE);
+		for (int i = ordinal % BLOCK_SIZE; i > 0; i--) {
+			reader.next();
+		}
+		return reader.word();
+	}
+
+	/**
+	 * Returns the ordinal of a word.
+	 *
+	 * @param word word to look for
+	 * @return ordinal of the word, or -1 if the word is not in the dictionary
+	 */
+	public int find(String word) {
+		int found = lowerBound(word);
+		return found < size && get(found).equals(word) ? found : -1;
+	}
+
+	/**
+	 * Returns the ordinal of the first word that is not less than the given word.
+	 *
+	 * @param word word to look for
+	 * @return ordinal of the first word not less than the given word, or the
+	 *         number of words if there is none
+	 */
+	public int lowerBound(String word) {
+		int blocks = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		int low = 0;
+		int high = blocks;
+
+		// find the first block that starts after the word
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (new BlockReader(middle).word().compareTo(word) <= 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+
+		if (low == 0) {
+			return 0;
+		}
+
+		// the word belongs in the block before it
+		int block = low - 1;
+		BlockReader reader = new BlockReader(block);
+		int ordinal = block * BLOCK_SIZE;
+		int end = Math.min(ordinal + BLOCK_SIZE, size);
+
+		while (reader.word().compareTo(word) < 0) {
+			if (++ordinal == end) {
+				return end;
+			}
+			reader.next();
+		}
+		return ordinal;
+	}
+
+	/**
+	 * Returns the ordinals of the words that start with a prefix, as a range from
+	 * the first ordinal (inclusive) to the last ordinal (exclusive).
+	 *
+	 * @param prefix the prefix
+	 * @return array of the first and end ordinals
+	 */
+	public int[] prefixRange(String prefix) {
+		String end = prefixEnd(prefix);
+		return new int[] { lowerBound(prefix), end == null ? size : lowerBound(end) };
+	}
+
+	@Override
+	public Iterator<String> iterator() {
+		return new Iterator<String>() {
+			/** Ordinal of the next word */
+			private int ordinal = 0;
+
+			/** Reader for the current block */
+			private BlockReader reader = null;
+
+			@Override
+			public boolean hasNext() {
+				return ordinal < size;
+			}
+
+			@Override
+			public String next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+
+				if (ordinal % BLOCK_SIZE == 0) {
+					reader = new BlockReader(ordinal / BLOCK_SIZE);
+				} else {
+					reader.next();
+				}
+				ordinal++;
+				return reader.word();
+			}
+		};
+	}
+
+	/**
+	 * Decodes the words of one block in order.
+	 */
+	private class BlockReader {
+		/**
+		 * Reader positioned after the current word.
+		 */
+		private final ByteBuffer reader;
+
+		/**
+		 * UTF-8 bytes of the current word.
+		 */
+		private byte[] bytes;
+
+		/**
+		 * Length of the current word in bytes.
+		 */
+		private int length;
+
+		/**
+		 * Constructor for block reader, positioned at the first word of the block.
+		 *
+		 * @param block index of the block
+		 */
+		public BlockReader(int block) {
+			reader = buffer.duplicate();
+			reader.position((int) buffer.getLong(directoryOffset + block * Long.BYTES));
+			length = VByte.read(reader);
+			bytes = new byte[Math.max(length, 16)];
+			reader.get(bytes, 0, length);
+		}
+
+		/**
+		 * Moves to the next word of the block.
+		 */
+		public void next() {
+			int shared = VByte.read(reader);
+			int suffix = VByte.read(reader);
+			if (shared + suffix > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(shared + suffix, bytes.length * 2));
+			}
+			reader.get(bytes, shared, suffix);
+			length = shared + suffix;
+		}
+
+		/**
+		 * Returns the current word.
+		 *
+		 * @return the current word
+		 */
+		public String word() {
+			return new String(bytes, 0, length, StandardCharsets.UTF_8);
+		}
+	}
+}
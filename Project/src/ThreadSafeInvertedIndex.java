@@ -3,6 +3,7 @@ import java.nio.file.Path;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.locks.StampedLock;
 
 /**
  * Stores the Inverted Index
@@ -12,16 +13,26 @@ import java.util.Set;
 public class ThreadSafeInvertedIndex extends InvertedIndex {
 
 	/**
-	 * Read write lock member
+	 * Lock guarding the index. Reads take the read lock, which is a single
+	 * atomic update of the lock state instead of a monitor.
 	 */
-	private final ReadWriteLock lock;
+	private final StampedLock lock;
 
 	/**
 	 * Constructor for Threadsafe Inverted Index class.
 	 */
 	public ThreadSafeInvertedIndex() {
-		super();
-		lock = new ReadWriteLock();
+		this(false);
+	}
+
+	/**
+	 * Constructor for Threadsafe Inverted Index class.
+	 * 
+	 * @param compressed whether to compress postings
+	 */
+	public ThreadSafeInvertedIndex(boolean compressed) {
+		super(compressed);
+		lock = new StampedLock();
 	}
 
 	/**
@@ -35,11 +46,11 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	 */
 	@Override
 	public void add(String word, String location, int position) throws IOException {
-		lock.writeLock().lock();
+		long stamp = lock.writeLock();
 		try {
 			super.add(word, location, position);
 		} finally {
-			lock.writeLock().unlock();
+			lock.unlockWrite(stamp);
 		}
 	}
 
@@ -50,11 +61,11 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	 */
 	@Override
 	public Set<String> getWords() {
-		lock.readLock().lock();
+		long stamp = lock.readLock();
 		try {
 			return super.getWords();
 		} finally {
-			lock.readLock().unlock();
+			lock.unlockRead(stamp);
 		}
 	}
 
@@ -66,11 +77,11 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	 */
 	@Override
 	public Set<String> getLocations(String word) {
-		lock.readLock().lock();
+		long stamp = lock.readLock();
 		try {
 			return super.getLocations(word);
 		} finally {
-			lock.readLock().unlock();
+			lock.unlockRead(stamp);
 		}
 	}
 
@@ -82,11 +93,11 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	 */
 	@Override
 	public Set<String> getLocationsPartial(String stemmedWord) {
-		lock.readLock().lock();
+		long stamp = lock.readLock();
 		try {
 			return super.getLocationsPartial(stemmedWord);
 		} finally {
-			lock.readLock().unlock();
+			lock.unlockRead(stamp);
 		}
 	}
 
@@ -100,11 +111,11 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	 */
 	@Override
 	public Set<Integer> getPositions(String stemmedWord, String location) {
-		lock.readLock().lock();
+		long stamp = lock.readLock();
 		try {
 			return super.getPositions(stemmedWord, location);
 		} finally {
-			lock.readLock().unlock();
+			lock.unlockRead(stamp);
 		}
 	}
 
@@ -116,11 +127,11 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	 */
 	@Override
 	public boolean contains(String word) {
-		lock.readLock().lock();
+		long stamp = lock.readLock();
 		try {
 			return super.contains(word);
 		} finally {
-			lock.readLock().unlock();
+			lock.unlockRead(stamp);
 		}
 	}
 
@@ -133,11 +144,11 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	 */
 	@Override
 	public boolean contains(String word, String location) {
-		lock.readLock().lock();
+		long stamp = lock.readLock();
 		try {
 			return super.contains(word, location);
 		} finally {
-			lock.readLock().unlock();
+			lock.unlockRead(stamp);
 		}
 	}
 
@@ -151,11 +162,11 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	 */
 	@Override
 	public boolean contains(String word, String location, int position) {
-		lock.readLock().lock();
+		long stamp = lock.readLock();
 		try {
 			return super.contains(word, location, position);
 		} finally {
-			lock.readLock().unlock();
+			lock.unlockRead(stamp);
 		}
 	}
 
@@ -167,11 +178,11 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	 */
 	@Override
 	public int getCounts(String file) {
-		lock.readLock().lock();
+		long stamp = lock.readLock();
 		try {
 			return super.getCounts(file);
 		} finally {
-			lock.readLock().unlock();
+			lock.unlockRead(stamp);
 		}
 	}
 
@@ -182,11 +193,11 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	 */
 	@Override
 	public String toString() {
-		lock.readLock().lock();
+		long stamp = lock.readLock();
 		try {
 			return super.toString();
 		} finally {
-			lock.readLock().unlock();
+			lock.unlockRead(stamp);
 		}
 
 	}
@@ -198,11 +209,11 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	 * @throws IOException error for file
 	 */
 	public void createPrettyJson(Path valueOfFlagIndex) throws IOException {
-		lock.readLock().lock();
+		long stamp = lock.readLock();
 		try {
 			super.createPrettyJson(valueOfFlagIndex);
 		} finally {
-			lock.readLock().unlock();
+			lock.unlockRead(stamp);
 		}
 	}
 
@@ -213,43 +224,80 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	 * @throws IOException error for file
 	 */
 	public void createCountsJson(Path valueOfFlagCounts) throws IOException {
-		lock.readLock().lock();
+		long stamp = lock.readLock();
 		try {
 			super.createCountsJson(valueOfFlagCounts);
 		} finally {
-			lock.readLock().unlock();
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Saves the index to a binary snapshot file.
+	 * 
+	 * @param path the path for the snapshot
+	 * @throws IOException error for file
+	 */
+	@Override
+	public void save(Path path) throws IOException {
+		long stamp = lock.readLock();
+		try {
+			super.save(path);
+		} finally {
+			lock.unlockRead(stamp);
 		}
 	}
 	
 	/**
-	 * Partial search for index by line
+	 * Partial search for index by line that keeps only the best results
 	 * 
 	 * @param queries stemmedLines as list
-	 * @return list of query data for partial search
+	 * @param k       maximum number of results to return
+	 * @return sorted list of the best query data for partial search
 	 */
 	@Override
-	public List<QueryData> partialSearch(Collection<String> queries) {
-		lock.readLock().lock();
+	public List<QueryData> partialSearch(Collection<String> queries, int k) {
+		long stamp = lock.readLock();
 		try {
-			return super.partialSearch(queries);
+			return super.partialSearch(queries, k);
 		} finally {
-			lock.readLock().unlock();
+			lock.unlockRead(stamp);
 		}
 	}
 
 	/**
-	 * Exact search for index by line
+	 * Exact search for index by line that keeps only the best results
 	 * 
 	 * @param queries stemmedLines as list
-	 * @return list of query data for exact search
+	 * @param k       maximum number of results to return
+	 * @return sorted list of the best query data for exact search
+	 */
+	@Override
+	public List<QueryData> exactSearch(Collection<String> queries, int k) {
+		long stamp = lock.readLock();
+		try {
+			return super.exactSearch(queries, k);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Search for a query with phrase and proximity clauses that keeps only the
+	 * best results
+	 * 
+	 * @param query     parsed query
+	 * @param exactFlag boolean for exact or partial query
+	 * @param k         maximum number of results to return
+	 * @return sorted list of the best query data for exact or partial search
 	 */
 	@Override
-	public List<QueryData> exactSearch(Collection<String> queries) {
-		lock.readLock().lock();
+	public List<QueryData> search(Query query, boolean exactFlag, int k) {
+		long stamp = lock.readLock();
 		try {
-			return super.exactSearch(queries);
+			return super.search(query, exactFlag, k);
 		} finally {
-			lock.readLock().unlock();
+			lock.unlockRead(stamp);
 		}
 	}
 
@@ -260,11 +308,11 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	 */
 	@Override
 	public void addAll(InvertedIndex localIndex) {
-		lock.writeLock().lock();
+		long stamp = lock.writeLock();
 		try {
 			super.addAll(localIndex);
 		} finally {
-			lock.writeLock().unlock();
+			lock.unlockWrite(stamp);
 		}
 	}
 }
\ No newline at end of file
@@ -1,4 +1,6 @@
 import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 
 /**
@@ -9,23 +11,43 @@ import java.nio.file.Path;
 public class ThreadSafeInvertedIndexBuilder extends InvertedIndexBuilder {
 
 	/**
-	 * The inverted index.
+	 * The inverted index, which must be thread safe.
 	 */
-	private final ThreadSafeInvertedIndex index;
+	private final WritableIndex index;
 
 	/** The work queue that will handle all of the tasks. */
 	private final WorkQueue tasks;
 
+	/**
+	 * Combines local indexes before they reach the index, or null to merge each
+	 * one into the index directly.
+	 */
+	private final IndexReducer reducer;
+
 	/**
 	 * Constructor for index instance.
 	 * 
 	 * @param index to build invert
 	 * @param queue work queue
 	 */
-	public ThreadSafeInvertedIndexBuilder(ThreadSafeInvertedIndex index, WorkQueue queue) {
+	public ThreadSafeInvertedIndexBuilder(WritableIndex index, WorkQueue queue) {
+		this(index, queue, false);
+	}
+
+	/**
+	 * Constructor for index instance.
+	 * 
+	 * @param index  to build invert
+	 * @param queue  work queue
+	 * @param reduce whether to combine local indexes in parallel and merge only
+	 *               the result into the index
+	 * @see IndexReducer
+	 */
+	public ThreadSafeInvertedIndexBuilder(WritableIndex index, WorkQueue queue, boolean reduce) {
 		super(index);
 		this.index = index;
 		this.tasks = queue;
+		this.reducer = reduce ? new IndexReducer() : null;
 	}
 
 	/**
@@ -36,8 +58,20 @@ public class ThreadSafeInvertedIndexBuilder extends InvertedIndexBuilder {
 	 */
 	@Override
 	public void build(Path start) throws IOException {
-		super.build(start);
+		if (Files.isDirectory(start)) {
+			// list directories in tasks too, so each worker keeps what it finds
+			tasks.execute(new DirectoryTask(start));
+		} else {
+			super.build(start);
+		}
 		tasks.finish();
+
+		if (reducer != null) {
+			InvertedIndex reduced = reducer.finish();
+			if (reduced != null) {
+				index.addAll(reduced);
+			}
+		}
 	}
 
 	/**
@@ -50,6 +84,39 @@ public class ThreadSafeInvertedIndexBuilder extends InvertedIndexBuilder {
 		tasks.execute(new AddToIndexTask(location));
 	}
 
+	/**
+	 * The non-static task class for listing a directory. Adds a task for every
+	 * subdirectory and text file in it.
+	 */
+	private class DirectoryTask implements Runnable {
+		/** Directory to list */
+		private final Path directory;
+
+		/**
+		 * Initializes this task.
+		 *
+		 * @param directory directory to list
+		 */
+		public DirectoryTask(Path directory) {
+			this.directory = directory;
+		}
+
+		@Override
+		public void run() {
+			try (DirectoryStream<Path> listing = Files.newDirectoryStream(directory)) {
+				for (Path path : listing) {
+					if (Files.isDirectory(path)) {
+						tasks.execute(new DirectoryTask(path));
+					} else if (isTextFile(path)) {
+						tasks.execute(new AddToIndexTask(path));
+					}
+				}
+			} catch (IOException e) {
+				System.out.println("Unable to build index from the path: " + directory.toString());
+			}
+		}
+	}
+
 	/**
 	 * The non-static task class for building index.
 	 */
@@ -71,7 +138,11 @@ public class ThreadSafeInvertedIndexBuilder extends InvertedIndexBuilder {
 			try {
 				InvertedIndex localIndex = new InvertedIndex();
 				addFile(path, localIndex);
-				index.addAll(localIndex);
+				if (reducer != null) {
+					reducer.add(localIndex);
+				} else {
+					index.addAll(localIndex);
+				}
 			} catch (IOException e) {
 				System.out.println("Unable to build index from the path: " + e.toString());
 			}
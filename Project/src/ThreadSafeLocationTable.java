@@ -0,0 +1,100 @@
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Location table that can be shared by indexes changed from several threads at
+ * once. Searches look up the count of every posting they score, so reads take
+ * no lock: the table is kept in a concurrent map and in arrays published
+ * through volatile fields. Writes are synchronized on the table, so only
+ * writers wait for each other.
+ *
+ * @author isaiahjenkins
+ */
+public class ThreadSafeLocationTable implements LocationTableInterface {
+
+	/**
+	 * Initial capacity of the location and count arrays.
+	 */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/**
+	 * IDs by location
+	 */
+	private final ConcurrentHashMap<String, Integer> ids;
+
+	/**
+	 * Locations by ID, replaced by a larger copy when full
+	 */
+	private volatile String[] locations;
+
+	/**
+	 * Word counts by ID, replaced by a larger copy when full
+	 */
+	private volatile AtomicIntegerArray counts;
+
+	/**
+	 * Number of locations
+	 */
+	private volatile int size;
+
+	/**
+	 * Constructor for an empty thread safe location table.
+	 */
+	public ThreadSafeLocationTable() {
+		ids = new ConcurrentHashMap<>();
+		locations = new String[INITIAL_CAPACITY];
+		counts = new AtomicIntegerArray(INITIAL_CAPACITY);
+		size = 0;
+	}
+
+	@Override
+	public synchronized int add(String location) {
+		Integer id = ids.get(location);
+		if (id != null) {
+			return id;
+		}
+
+		String[] locations = this.locations;
+		if (size == locations.length) {
+			locations = Arrays.copyOf(locations, size * 2);
+			AtomicIntegerArray counts = new AtomicIntegerArray(size * 2);
+			for (int i = 0; i < size; i++) {
+				counts.set(i, this.counts.get(i));
+			}
+			this.counts = counts;
+		}
+
+		// publish the location before its ID, a reader that has the ID finds it
+		locations[size] = location;
+		this.locations = locations;
+		ids.put(location, size);
+		return size++;
+	}
+
+	@Override
+	public int getId(String location) {
+		Integer id = ids.get(location);
+		return id == null ? -1 : id;
+	}
+
+	@Override
+	public String getLocation(int id) {
+		return locations[id];
+	}
+
+	@Override
+	public int getCount(int id) {
+		return counts.get(id);
+	}
+
+	@Override
+	public synchronized void addCount(int id, int amount) {
+		counts.addAndGet(id, amount);
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+}
@@ -2,7 +2,6 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.TreeMap;
-import java.util.TreeSet;
 
 import opennlp.tools.stemmer.Stemmer;
 import opennlp.tools.stemmer.snowball.SnowballStemmer;
@@ -15,18 +14,23 @@ import opennlp.tools.stemmer.snowball.SnowballStemmer;
 public class ThreadSafeQueryParser implements QueryParserInterface {
 
 	/**
-	 * The inverted index.
+	 * The inverted index, which must be thread safe.
 	 */
-	private final ThreadSafeInvertedIndex index;
+	private final WritableIndex index;
 
 	/**
 	 * WorkQueue member for multithreading
 	 */
 	private final WorkQueue tasks;
+
+	/**
+	 * Whether every plain query word is required.
+	 */
+	private final boolean conjunctive;
 	/**
 	 * Queries and results of inverted index
 	 */
-	private final TreeMap<String, List<InvertedIndex.QueryData>> queriesAndResults;
+	private final TreeMap<String, List<SearchIndex.QueryData>> queriesAndResults;
 
 	/**
 	 * Final constant default to help create stemmer instances.
@@ -39,9 +43,21 @@ public class ThreadSafeQueryParser implements QueryParserInterface {
 	 * @param index to build invert
 	 * @param queue work queue for thread
 	 */
-	public ThreadSafeQueryParser(ThreadSafeInvertedIndex index, WorkQueue queue) {
+	public ThreadSafeQueryParser(WritableIndex index, WorkQueue queue) {
+		this(index, queue, false);
+	}
+
+	/**
+	 * Constructor for index instance.
+	 * 
+	 * @param index       to build invert
+	 * @param queue       work queue for thread
+	 * @param conjunctive whether every plain query word is required
+	 */
+	public ThreadSafeQueryParser(WritableIndex index, WorkQueue queue, boolean conjunctive) {
 		this.index = index;
 		this.tasks = queue;
+		this.conjunctive = conjunctive;
 		queriesAndResults = new TreeMap<>();
 	}
 	
@@ -93,18 +109,13 @@ public class ThreadSafeQueryParser implements QueryParserInterface {
 		public void run() {
 			Stemmer stemmer = new SnowballStemmer(DEFAULT);
 
-			TreeSet<String> queries = new TreeSet<>();
-
-			for (String word : TextParser.parse(line)) {
-				word = stemmer.stem(word).toString();
-				queries.add(word);
-			}
+			Query query = Query.parse(line, stemmer, conjunctive);
 
-			if (queries.isEmpty()) {
+			if (query.isEmpty()) {
 				return;
 			}
 
-			String joined = String.join(" ", queries);
+			String joined = query.toString();
 
 			synchronized (queriesAndResults) {
 				if (queriesAndResults.containsKey(joined)) {
@@ -112,7 +123,7 @@ public class ThreadSafeQueryParser implements QueryParserInterface {
 				}
 			}
 
-			List<InvertedIndex.QueryData> queryData = index.search(queries, exactFlag);
+			List<SearchIndex.QueryData> queryData = index.search(query, exactFlag);
 
 			synchronized (queriesAndResults) {
 				queriesAndResults.put(joined, queryData);
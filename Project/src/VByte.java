@@ -0,0 +1,82 @@
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Variable-byte encoding for non-negative ints. Each byte holds 7 bits of the
+ * value, low bits first, and the high bit is set on every byte except the
+ * last. Small values such as gaps between sorted numbers take a single byte.
+ *
+ * @author isaiahjenkins
+ */
+public class VByte {
+
+	/**
+	 * Largest number of bytes a value can take.
+	 */
+	public static final int MAX_SIZE = 5;
+
+	/**
+	 * Writes a value.
+	 *
+	 * @param out   output to write to
+	 * @param value non-negative value to write
+	 * @throws IOException error for file
+	 */
+	public static void write(DataOutput out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	/**
+	 * Writes a value into an array, which must have room for {@link #MAX_SIZE}
+	 * bytes at the offset.
+	 *
+	 * @param bytes  array to write to
+	 * @param offset offset to write at
+	 * @param value  non-negative value to write
+	 * @return offset after the value
+	 */
+	public static int write(byte[] bytes, int offset, int value) {
+		while ((value & ~0x7F) != 0) {
+			bytes[offset++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		bytes[offset++] = (byte) value;
+		return offset;
+	}
+
+	/**
+	 * Reads a value at the current position of the buffer and advances it.
+	 *
+	 * @param buffer buffer to read from
+	 * @return value read
+	 */
+	public static int read(ByteBuffer buffer) {
+		int b = buffer.get();
+		int value = b & 0x7F;
+		for (int shift = 7; b < 0; shift += 7) {
+			b = buffer.get();
+			value |= (b & 0x7F) << shift;
+		}
+		return value;
+	}
+
+	/**
+	 * Returns the number of bytes needed to write a value.
+	 *
+	 * @param value non-negative value
+	 * @return number of bytes
+	 */
+	public static int size(int value) {
+		int size = 1;
+		while ((value & ~0x7F) != 0) {
+			value >>>= 7;
+			size++;
+		}
+		return size;
+	}
+}
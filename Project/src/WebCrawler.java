@@ -1,6 +1,8 @@
 import java.io.IOException;
 import java.net.URL;
 import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Semaphore;
 
 /**
  * Crawler class to search for links and build the index
@@ -11,9 +13,9 @@ import java.util.HashSet;
 public class WebCrawler extends InvertedIndexBuilder {
 
 	/**
-	 * The inverted index.
+	 * The inverted index, which must be thread safe.
 	 */
-	private final ThreadSafeInvertedIndex index;
+	private final WritableIndex index;
 
 	/**
 	 * Set to track already visited urls
@@ -25,6 +27,41 @@ public class WebCrawler extends InvertedIndexBuilder {
 	 */
 	private final WorkQueue tasks;
 
+	/**
+	 * Work queue for fetching pages, which may be the same as {@link #tasks}
+	 */
+	private final WorkQueue fetches;
+
+	/**
+	 * Limits the number of fetches in flight, or null for no limit
+	 */
+	private final Semaphore fetchLimit;
+
+	/**
+	 * Fetches pages without blocking, or null to fetch them in the fetch stage
+	 */
+	private final AsyncHtmlFetcher fetcher;
+
+	/**
+	 * Stage that fetches pages
+	 */
+	private final PipelineStage fetchStage;
+
+	/**
+	 * Stage that parses links and strips html from fetched pages
+	 */
+	private final PipelineStage parseStage;
+
+	/**
+	 * Stage that stems the text of pages and adds it to the index
+	 */
+	private final PipelineStage indexStage;
+
+	/**
+	 * Number of pages handed to the pipeline that have not left it yet
+	 */
+	private int pages;
+
 	/**
 	 * Max limit of pages to crawl
 	 */
@@ -35,20 +72,120 @@ public class WebCrawler extends InvertedIndexBuilder {
 	 */
 	private String seedURL;
 
+	/**
+	 * Combines local indexes before they reach the index, or null to merge each
+	 * one into the index directly.
+	 */
+	private final IndexReducer reducer;
+
 	/**
 	 * @param index   thread safe index
 	 * @param seedURL first url to crawl
 	 * @param limit   max limit of pages to crawl
 	 * @param queue   work queue
 	 */
-	public WebCrawler(ThreadSafeInvertedIndex index, String seedURL, int limit, WorkQueue queue) {
+	public WebCrawler(WritableIndex index, String seedURL, int limit, WorkQueue queue) {
+		this(index, seedURL, limit, queue, false);
+	}
+
+	/**
+	 * @param index   thread safe index
+	 * @param seedURL first url to crawl
+	 * @param limit   max limit of pages to crawl
+	 * @param queue   work queue
+	 * @param reduce  whether to combine local indexes in parallel and merge only
+	 *                the result into the index
+	 * @see IndexReducer
+	 */
+	public WebCrawler(WritableIndex index, String seedURL, int limit, WorkQueue queue, boolean reduce) {
+		this(index, seedURL, limit, queue, queue, 0, 0, reduce);
+	}
+
+	/**
+	 * Pages go through three stages: a fetch stage on the fetch queue, then a
+	 * stage that parses links and strips html and a stage that stems and indexes
+	 * the text, both on the work queue. A fetch queue of virtual threads can keep
+	 * many fetches waiting on the network while the CPU work stays on the bounded
+	 * work queue. The parse and index stages hold at most a backlog of pages
+	 * each, so a full stage slows the stage before it.
+	 * 
+	 * @param index      thread safe index
+	 * @param seedURL    first url to crawl
+	 * @param limit      max limit of pages to crawl
+	 * @param queue      work queue for parsing and indexing pages
+	 * @param fetchQueue work queue for fetching pages
+	 * @param maxFetches max number of fetches in flight at once, or 0 for no
+	 *                   limit
+	 * @param backlog    max number of pages waiting or running in the parse and
+	 *                   in the index stage, or 0 for twice the work queue size
+	 * @param reduce     whether to combine local indexes in parallel and merge
+	 *                   only the result into the index
+	 * @see WorkQueue#virtual(int)
+	 * @see PipelineStage
+	 */
+	public WebCrawler(WritableIndex index, String seedURL, int limit, WorkQueue queue, WorkQueue fetchQueue,
+			int maxFetches, int backlog, boolean reduce) {
+		this(index, seedURL, limit, queue, fetchQueue, maxFetches, null, backlog, reduce);
+	}
+
+	/**
+	 * Pages are fetched without blocking any thread, so the crawl can keep as
+	 * many requests outstanding as the fetcher allows, then go through the
+	 * stage that parses links and strips html and the stage that stems and
+	 * indexes the text on the work queue.
+	 *
+	 * @param index   thread safe index
+	 * @param seedURL first url to crawl
+	 * @param limit   max limit of pages to crawl
+	 * @param queue   work queue for parsing and indexing pages
+	 * @param fetcher fetcher for the pages
+	 * @param backlog max number of pages waiting or running in the parse and in
+	 *                the index stage, or 0 for twice the work queue size
+	 * @param reduce  whether to combine local indexes in parallel and merge only
+	 *                the result into the index
+	 * @see AsyncHtmlFetcher
+	 */
+	public WebCrawler(WritableIndex index, String seedURL, int limit, WorkQueue queue,
+			AsyncHtmlFetcher fetcher, int backlog, boolean reduce) {
+		this(index, seedURL, limit, queue, queue, 0, fetcher, backlog, reduce);
+	}
+
+	/**
+	 * Constructor for a crawler that fetches pages with the fetcher if it is not
+	 * null, otherwise with tasks on the fetch queue.
+	 *
+	 * @param index      thread safe index
+	 * @param seedURL    first url to crawl
+	 * @param limit      max limit of pages to crawl
+	 * @param queue      work queue for parsing and indexing pages
+	 * @param fetchQueue work queue for fetching pages
+	 * @param maxFetches max number of fetches in flight at once, or 0 for no
+	 *                   limit
+	 * @param fetcher    fetcher for the pages, or null
+	 * @param backlog    max number of pages waiting or running in the parse and
+	 *                   in the index stage, or 0 for twice the work queue size
+	 * @param reduce     whether to combine local indexes in parallel and merge
+	 *                   only the result into the index
+	 */
+	private WebCrawler(WritableIndex index, String seedURL, int limit, WorkQueue queue,
+			WorkQueue fetchQueue, int maxFetches, AsyncHtmlFetcher fetcher, int backlog, boolean reduce) {
 		super(index);
 		this.index = index;
 		this.tasks = queue;
+		this.fetches = fetchQueue;
+		this.fetchLimit = maxFetches > 0 ? new Semaphore(maxFetches) : null;
+		this.fetcher = fetcher;
 		this.limit = limit;
 		this.seedURL = seedURL;
 		alreadyVisitedUrls = new HashSet<>();
 		alreadyVisitedUrls.add(seedURL);
+		reducer = reduce ? new IndexReducer() : null;
+
+		int stageBacklog = backlog > 0 ? backlog : 2 * queue.size();
+		fetchStage = new PipelineStage("fetch", fetchQueue, 0);
+		parseStage = new PipelineStage("parse", queue, stageBacklog);
+		indexStage = new PipelineStage("index", queue, stageBacklog);
+		pages = 0;
 	}
 
 	/**
@@ -58,67 +195,217 @@ public class WebCrawler extends InvertedIndexBuilder {
 	 */
 	public void build() throws IOException {
 		startbuildIndexTask(seedURL);
-		tasks.finish();
+
+		// the stages add work to each other, so wait for the pages instead
+		synchronized (this) {
+			while (pages > 0) {
+				try {
+					this.wait();
+				} catch (InterruptedException e) {
+					System.out.println("Crawl was interrupted while waiting for pages");
+				}
+			}
+		}
+
+		if (reducer != null) {
+			InvertedIndex reduced = reducer.finish();
+			if (reduced != null) {
+				index.addAll(reduced);
+			}
+		}
 	}
 
 	/**
-	 * Creates the first task and gives it to the work queue.
+	 * Returns the stages of the crawl, in the order pages go through them.
 	 *
-	 * @param url passed url to index
+	 * @return the fetch, parse and index stages, without the fetch stage when
+	 *         pages are fetched without blocking
+	 */
+	public List<PipelineStage> getStages() {
+		if (fetcher != null) {
+			return List.of(parseStage, indexStage);
+		}
+		return List.of(fetchStage, parseStage, indexStage);
+	}
+
+	/**
+	 * Hands a page to the fetcher or the fetch stage.
+	 *
+	 * @param url url of the page
 	 */
 	private void startbuildIndexTask(String url) {
-		tasks.execute(new BuildIndexTask(url));
+		synchronized (this) {
+			pages++;
+		}
+
+		if (fetcher == null) {
+			fetchStage.submit(new FetchTask(url));
+			return;
+		}
+
+		fetcher.fetch(url, 3).whenComplete((htmlOfUrl, error) -> {
+			boolean handedOver = false;
+			try {
+				if (htmlOfUrl != null) {
+					handedOver = true;
+					parseStage.submit(new ParseTask(url, htmlOfUrl));
+				}
+			} finally {
+				if (!handedOver) {
+					pageDone();
+				}
+			}
+		});
 	}
 
 	/**
-	 * The non-static task class for building index.
+	 * Called once a page has left the pipeline, whether it was indexed or not.
 	 */
-	private class BuildIndexTask implements Runnable {
-		/** Passed path to build index */
+	private synchronized void pageDone() {
+		pages--;
+		if (pages == 0) {
+			this.notifyAll();
+		}
+	}
+
+	/**
+	 * The non-static task class for fetching a page. Hands the page to the
+	 * parse stage.
+	 */
+	private class FetchTask implements Runnable {
+		/** Url to fetch */
 		private final String currentURL;
 
-		/**
-		 * html of url
-		 */
-		private String htmlOfUrl;
-		
 		/**
 		 * Initializes this task.
 		 *
-		 * @param url passed path for index
+		 * @param url url to fetch
 		 */
-		public BuildIndexTask(String url) {
+		public FetchTask(String url) {
 			this.currentURL = url;
-			this.htmlOfUrl = null;
 		}
 
 		@Override
 		public void run() {
+			boolean handedOver = false;
 			try {
-				htmlOfUrl = HtmlFetcher.fetch(currentURL, 3);
+				String htmlOfUrl;
+				if (fetchLimit != null) {
+					fetchLimit.acquireUninterruptibly();
+				}
+				try {
+					htmlOfUrl = HtmlFetcher.fetch(currentURL, 3);
+				} finally {
+					if (fetchLimit != null) {
+						fetchLimit.release();
+					}
+				}
 
 				if (htmlOfUrl != null) {
-					for (URL urlsToCrawal : LinkParser.listLinks(new URL(currentURL), htmlOfUrl)) {
-						synchronized (alreadyVisitedUrls) {
-							if (!alreadyVisitedUrls.contains(urlsToCrawal.toString())) {
-								if (alreadyVisitedUrls.size() >= limit) {
-									break;
-								}
-								alreadyVisitedUrls.add(urlsToCrawal.toString());
-								tasks.execute(new BuildIndexTask(urlsToCrawal.toString()));
+					handedOver = true;
+					parseStage.submit(new ParseTask(currentURL, htmlOfUrl));
+				}
+			} finally {
+				if (!handedOver) {
+					pageDone();
+				}
+			}
+		}
+	}
+
+	/**
+	 * The non-static task class for parsing the links of a page and stripping
+	 * its html. Hands new links to the fetch stage and the text to the index
+	 * stage.
+	 */
+	private class ParseTask implements Runnable {
+		/** Url of the page */
+		private final String currentURL;
 
+		/**
+		 * html of url
+		 */
+		private final String htmlOfUrl;
+
+		/**
+		 * Initializes this task.
+		 *
+		 * @param url  url of the page
+		 * @param html fetched html of the url
+		 */
+		public ParseTask(String url, String html) {
+			this.currentURL = url;
+			this.htmlOfUrl = html;
+		}
+
+		@Override
+		public void run() {
+			boolean handedOver = false;
+			try {
+				for (URL urlsToCrawal : LinkParser.listLinks(new URL(currentURL), htmlOfUrl)) {
+					synchronized (alreadyVisitedUrls) {
+						if (!alreadyVisitedUrls.contains(urlsToCrawal.toString())) {
+							if (alreadyVisitedUrls.size() >= limit) {
+								break;
 							}
+							alreadyVisitedUrls.add(urlsToCrawal.toString());
+							startbuildIndexTask(urlsToCrawal.toString());
+
 						}
 					}
 				}
 
+				String text = HtmlCleaner.stripHtml(htmlOfUrl);
+				handedOver = true;
+				indexStage.submit(new BuildIndexTask(currentURL, text));
+			} catch (IOException e) {
+				System.out.println("Cannot read url");
+			} finally {
+				if (!handedOver) {
+					pageDone();
+				}
+			}
+		}
+	}
+
+	/**
+	 * The non-static task class for building index.
+	 */
+	private class BuildIndexTask implements Runnable {
+		/** Passed path to build index */
+		private final String currentURL;
+
+		/**
+		 * text of the page without html
+		 */
+		private final String text;
+		
+		/**
+		 * Initializes this task.
+		 *
+		 * @param url  passed path for index
+		 * @param text text of the page without html
+		 */
+		public BuildIndexTask(String url, String text) {
+			this.currentURL = url;
+			this.text = text;
+		}
 
+		@Override
+		public void run() {
+			try {
 				InvertedIndex localIndex = new InvertedIndex();
-				addFile(currentURL, HtmlCleaner.stripHtml(htmlOfUrl), localIndex);
-				index.addAll(localIndex);
+				addFile(currentURL, text, localIndex);
+				if (reducer != null) {
+					reducer.add(localIndex);
+				} else {
+					index.addAll(localIndex);
+				}
 			} catch (IOException e) {
 				System.out.println("Cannot read url");
+			} finally {
+				pageDone();
 			}
 		}
 	}
-}
\ No newline at end of file
+}
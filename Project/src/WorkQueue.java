@@ -1,24 +1,52 @@
-import java.util.LinkedList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * A simple work queue implementation based on the IBM Developer article by
- * Brian Goetz. It is up to the user of this class to keep track of whether
- * there is any pending work remaining.
+ * A work queue backed by work-stealing deques. Every worker thread has its own
+ * deque: work added by a worker while it runs a task goes to that worker's
+ * deque and is usually run by the same worker, and idle workers steal from the
+ * others instead of all waiting on one shared queue. Work added from outside
+ * the pool is spread over shared submission queues. Each deque runs its work in
+ * the order it was added.
  *
- * @see <a href=
- *      "https://www.ibm.com/developerworks/library/j-jtp0730/index.html"> Java
- *      Theory and Practice: Thread Pools and Work Queues</a>
+ * A queue made with {@link #virtual(int)} instead runs every task on its own
+ * virtual thread, for work that mostly waits on the network.
+ *
+ * The queue counts the work it is given and measures how long work waits
+ * before it starts and how long it runs. A summary is printed when the queue is
+ * shutdown.
+ *
+ * It is up to the user of this class to keep track of whether there is any
+ * pending work remaining.
+ *
+ * @see ForkJoinPool
  */
 public class WorkQueue {
 
 	/**
-	 * Pool of worker threads that will wait in the background until work is
-	 * available.
+	 * Pool of worker threads with their deques, or the executor that starts a
+	 * virtual thread per task.
 	 */
-	private final PoolWorker[] workers;
+	private final ExecutorService pool;
 
-	/** Queue of pending work requests. */
-	private final LinkedList<Runnable> queue;
+	/**
+	 * Number of worker threads, or the number of platform threads a virtual
+	 * queue would have fallen back to.
+	 */
+	private final int threads;
 
 	/** Used to signal the queue should be shutdown. */
 	private volatile boolean shutdown;
@@ -27,7 +55,37 @@ public class WorkQueue {
 	public static final int DEFAULT = 5;
 
 	/** variable for pending work */
-	private int pending;
+	private final AtomicInteger pending;
+
+	/** Number of work requests added */
+	private final LongAdder submitted;
+
+	/** Number of work requests that finished without an exception */
+	private final LongAdder completed;
+
+	/** Number of work requests that threw an exception */
+	private final AtomicLong failed;
+
+	/** Number of work requests running right now */
+	private final AtomicInteger running;
+
+	/** Time from adding a work request until it starts */
+	private final Histogram waitTimes;
+
+	/** Time a work request runs */
+	private final Histogram runTimes;
+
+	/** Worker threads the pool has started, by thread name */
+	private final Map<String, Worker> workers;
+
+	/** Most recent exceptions thrown by work requests, oldest first */
+	private final ArrayDeque<RuntimeException> failures;
+
+	/** Max number of exceptions kept in {@link #failures} */
+	public static final int FAILURES_KEPT = 10;
+
+	/** Time the queue was shutdown, or 0 if still running */
+	private volatile long shutdownTime;
 
 	/**
 	 * Starts a work queue with the default number of threads.
@@ -45,18 +103,66 @@ public class WorkQueue {
 	 * @param threads number of worker threads; should be greater than 1
 	 */
 	public WorkQueue(int threads) {
-		this.queue = new LinkedList<Runnable>();
-		this.workers = new PoolWorker[threads];
+		this(null, threads);
+	}
+
+	/**
+	 * Starts a work queue that runs tasks with an executor.
+	 *
+	 * @param pool    executor for the tasks, or {@code null} for a pool of
+	 *                worker threads
+	 * @param threads number of threads reported by {@link #size()}
+	 */
+	private WorkQueue(ExecutorService pool, int threads) {
+		this.workers = new ConcurrentHashMap<>();
+		// first in, first out within each deque, since tasks are never joined
+		this.pool = pool != null ? pool : new ForkJoinPool(threads, Worker::new, null, true);
+		this.threads = threads;
 		this.shutdown = false;
-		this.pending = 0;
-		// start the threads so they are waiting in the background
-		for (int i = 0; i < threads; i++) {
-			workers[i] = new PoolWorker();
-			workers[i].start();
+		this.pending = new AtomicInteger();
+		this.submitted = new LongAdder();
+		this.completed = new LongAdder();
+		this.failed = new AtomicLong();
+		this.running = new AtomicInteger();
+		this.waitTimes = new Histogram();
+		this.runTimes = new Histogram();
+		this.failures = new ArrayDeque<>();
+		this.shutdownTime = 0;
+	}
 
+	/**
+	 * Starts a work queue that runs every task on its own virtual thread, so
+	 * hundreds of tasks blocked on I/O do not need hundreds of platform threads.
+	 * Virtual threads run on a small pool of carrier threads, so CPU work in
+	 * these tasks stays bounded by the number of processors. Virtual threads need
+	 * Java 21 or later; on an older runtime this starts a work queue with the
+	 * given number of platform threads instead.
+	 *
+	 * @param fallbackThreads number of worker threads when there are no virtual
+	 *                        threads
+	 * @return the work queue
+	 * @see #isVirtual()
+	 */
+	public static WorkQueue virtual(int fallbackThreads) {
+		try {
+			ExecutorService executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+					.invoke(null);
+			return new WorkQueue(executor, fallbackThreads);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			// no virtual threads in this runtime
+			return new WorkQueue(fallbackThreads);
 		}
 	}
 
+	/**
+	 * Returns true if the queue runs every task on its own virtual thread.
+	 *
+	 * @return true for virtual threads, false for a pool of worker threads
+	 */
+	public boolean isVirtual() {
+		return !(pool instanceof ForkJoinPool);
+	}
+
 	/**
 	 * Adds a work request to the queue. A thread will process this request when
 	 * available.
@@ -64,19 +170,22 @@ public class WorkQueue {
 	 * @param r work request (in the form of a {@link Runnable} object)
 	 */
 	public void execute(Runnable r) {
-		incrementPending();
-		synchronized (queue) {
-			queue.addLast(r);
-			queue.notifyAll();
+		pending.incrementAndGet();
+		submitted.increment();
+		try {
+			pool.execute(new Task(r));
+		} catch (RejectedExecutionException e) {
+			// the queue was shutdown, the work will not be done
+			decrementPending();
 		}
 	}
-	
+
 	/**
 	 * Waits for all pending work to be finished.
 	 */
 	public void finish() {
 		synchronized (this) {
-			while (pending > 0) {
+			while (pending.get() > 0) {
 				try {
 					this.wait();
 				} catch (InterruptedException e) {
@@ -87,25 +196,15 @@ public class WorkQueue {
 	}
 
 	/**
-	 * Increments pending work.
-	 */
-	private void incrementPending() {
-		synchronized (this) {
-			pending++;
-		}
-	}
-
-	/**
-	 * Decrements pending work.
+	 * Decrements pending work. Only the last piece of work takes the monitor, to
+	 * wake threads waiting in {@link #finish()}.
 	 */
 	private void decrementPending() {
-		synchronized (this) {
-			pending--;
-			if (pending == 0) {
+		if (pending.decrementAndGet() == 0) {
+			synchronized (this) {
 				this.notifyAll();
 			}
 		}
-
 	}
 
 	/**
@@ -115,9 +214,11 @@ public class WorkQueue {
 	public void shutdown() {
 		// safe to do unsynchronized due to volatile keyword
 		shutdown = true;
+		pool.shutdown();
 
-		synchronized (queue) {
-			queue.notifyAll();
+		if (shutdownTime == 0) {
+			shutdownTime = System.nanoTime();
+			System.out.println(this);
 		}
 	}
 
@@ -127,49 +228,377 @@ public class WorkQueue {
 	 * @return number of worker threads
 	 */
 	public int size() {
-		return workers.length;
+		return threads;
+	}
+
+	/**
+	 * Returns true if the calling thread is one of this queue's worker threads.
+	 * Always false for a queue of virtual threads.
+	 *
+	 * @return true if called from a worker of this queue
+	 */
+	public boolean isWorker() {
+		Thread current = Thread.currentThread();
+		return current instanceof ForkJoinWorkerThread && ((ForkJoinWorkerThread) current).getPool() == pool;
+	}
+
+	/**
+	 * Returns the amount of work added to the queue that has not finished yet.
+	 *
+	 * @return number of pending work requests
+	 */
+	public int getPending() {
+		return pending.get();
+	}
+
+	/**
+	 * Returns the number of work requests added to the queue.
+	 *
+	 * @return number of submitted work requests
+	 */
+	public long getSubmitted() {
+		return submitted.sum();
+	}
+
+	/**
+	 * Returns the number of work requests that finished without an exception.
+	 *
+	 * @return number of completed work requests
+	 */
+	public long getCompleted() {
+		return completed.sum();
+	}
+
+	/**
+	 * Returns the number of work requests that threw an exception.
+	 *
+	 * @return number of failed work requests
+	 * @see #getFailures()
+	 */
+	public long getFailed() {
+		return failed.get();
+	}
+
+	/**
+	 * Returns the most recent exceptions thrown by work requests, oldest first.
+	 * At most {@link #FAILURES_KEPT} are kept.
+	 *
+	 * @return recent exceptions of failed work requests
+	 */
+	public List<RuntimeException> getFailures() {
+		synchronized (failures) {
+			return new ArrayList<>(failures);
+		}
+	}
+
+	/**
+	 * Returns the number of work requests waiting for a worker to start them.
+	 *
+	 * @return current depth of the queue
+	 */
+	public int getDepth() {
+		return Math.max(0, pending.get() - running.get());
+	}
+
+	/**
+	 * Returns the times from adding work requests until they started. Work
+	 * dropped by a shutdown never starts and is not measured.
+	 *
+	 * @return histogram of wait times
+	 */
+	public Histogram getWaitTimes() {
+		return waitTimes;
+	}
+
+	/**
+	 * Returns the times work requests ran. Work dropped by a shutdown never runs
+	 * and is not measured.
+	 *
+	 * @return histogram of run times
+	 */
+	public Histogram getRunTimes() {
+		return runTimes;
+	}
+
+	/**
+	 * Returns the fraction of time each worker thread spent running work over its
+	 * own lifetime, from when the pool started it until it ended or the queue was
+	 * shutdown. The pool ends workers that stay idle and starts new ones when work
+	 * comes back, so there may be more workers than {@link #size()}. A queue of
+	 * virtual threads has a thread per work request, so it reports no workers.
+	 *
+	 * @return busy ratio between 0 and 1 by worker thread name
+	 */
+	public Map<String, Double> getBusyRatios() {
+		Map<String, Double> ratios = new TreeMap<>();
+		for (Worker worker : workers.values()) {
+			ratios.put(worker.getName(), Math.min(1, (double) worker.busy / worker.getLifetime()));
+		}
+		return ratios;
+	}
+
+	/**
+	 * Returns a summary of the work done by the queue.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder summary = new StringBuilder();
+		summary.append(String.format("Work queue (%s): %d submitted, %d completed, %d failed, %d pending (%d waiting)",
+				isVirtual() ? "virtual" : threads + " threads", getSubmitted(), getCompleted(), getFailed(),
+				getPending(), getDepth()));
+		summary.append(String.format("%n  wait: %s%n  run:  %s", waitTimes, runTimes));
+
+		if (!workers.isEmpty()) {
+			// weighted by lifetime, so a worker that lived briefly counts for little
+			double busy = 0;
+			double lifetime = 0;
+			double min = 1;
+			double max = 0;
+			for (Worker worker : workers.values()) {
+				busy += worker.busy;
+				lifetime += worker.getLifetime();
+				double ratio = Math.min(1, (double) worker.busy / worker.getLifetime());
+				min = Math.min(min, ratio);
+				max = Math.max(max, ratio);
+			}
+			summary.append(String.format("%n  busy: %.0f%% average over %d workers (%.0f%% to %.0f%%)",
+					100 * Math.min(1, busy / lifetime), workers.size(), 100 * min, 100 * max));
+		}
+
+		RuntimeException last = null;
+		synchronized (failures) {
+			last = failures.peekLast();
+		}
+		if (last != null) {
+			summary.append(String.format("%n  last failure: %s", last));
+		}
+		return summary.toString();
+	}
+
+	/**
+	 * Counts the times of a measurement in buckets that double in size, so it
+	 * takes the same small space for any number of measurements. Percentiles are
+	 * rounded up to the end of their bucket.
+	 */
+	public static class Histogram {
+		/**
+		 * Number of measurements by bucket, where bucket i holds times from 2^(i-1)
+		 * up to 2^i nanoseconds and bucket 0 holds times of 0
+		 */
+		private final AtomicLongArray buckets;
+
+		/**
+		 * Sum of the measurements, in nanoseconds
+		 */
+		private final LongAdder total;
+
+		/**
+		 * Largest measurement, in nanoseconds
+		 */
+		private final AtomicLong max;
+
+		/**
+		 * Constructor for an empty histogram.
+		 */
+		public Histogram() {
+			buckets = new AtomicLongArray(Long.SIZE);
+			total = new LongAdder();
+			max = new AtomicLong();
+		}
+
+		/**
+		 * Adds a measurement.
+		 *
+		 * @param nanos time in nanoseconds
+		 */
+		public void record(long nanos) {
+			long time = Math.max(0, nanos);
+			buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(time));
+			total.add(time);
+
+			// only a new largest measurement writes the max
+			long largest = max.get();
+			while (time > largest && !max.compareAndSet(largest, time)) {
+				largest = max.get();
+			}
+		}
+
+		/**
+		 * Returns the number of measurements.
+		 *
+		 * @return number of measurements
+		 */
+		public long getCount() {
+			long measured = 0;
+			for (int i = 0; i < buckets.length(); i++) {
+				measured += buckets.get(i);
+			}
+			return measured;
+		}
+
+		/**
+		 * Returns the number of measurements in a bucket.
+		 *
+		 * @param bucket bucket holding times from 2^(bucket-1) up to 2^bucket
+		 *               nanoseconds
+		 * @return number of measurements in the bucket
+		 */
+		public long getCount(int bucket) {
+			return buckets.get(bucket);
+		}
+
+		/**
+		 * Returns the average measurement in milliseconds.
+		 *
+		 * @return average time
+		 */
+		public double getMeanMillis() {
+			long measured = getCount();
+			return measured == 0 ? 0 : total.sum() / 1e6 / measured;
+		}
+
+		/**
+		 * Returns the largest measurement in milliseconds.
+		 *
+		 * @return largest time
+		 */
+		public double getMaxMillis() {
+			return max.get() / 1e6;
+		}
+
+		/**
+		 * Returns the time in milliseconds that the given fraction of the
+		 * measurements do not go over, rounded up to the end of its bucket.
+		 *
+		 * @param fraction fraction of the measurements, such as 0.99
+		 * @return time of the percentile
+		 */
+		public double getPercentileMillis(double fraction) {
+			long target = (long) Math.ceil(fraction * getCount());
+			long seen = 0;
+			for (int i = 0; i < buckets.length(); i++) {
+				seen += buckets.get(i);
+				if (seen >= target && seen > 0) {
+					return i == 0 ? 0 : Math.min(1L << i, max.get()) / 1e6;
+				}
+			}
+			return getMaxMillis();
+		}
+
+		@Override
+		public String toString() {
+			return String.format("mean %.3f ms, p50 %.3f ms, p99 %.3f ms, max %.3f ms", getMeanMillis(),
+					getPercentileMillis(0.5), getPercentileMillis(0.99), getMaxMillis());
+		}
 	}
 
 	/**
-	 * Waits until work is available in the work queue. When work is found, will
-	 * remove the work from the queue and run it. If a shutdown is detected, will
-	 * exit instead of grabbing new work from the queue. These threads will continue
-	 * running in the background until a shutdown is requested.
+	 * Worker thread of the pool that keeps the time it spent running work and
+	 * the time it lived.
 	 */
-	private class PoolWorker extends Thread {
+	private class Worker extends ForkJoinWorkerThread {
+		/** Time spent running work, only changed by this worker */
+		private volatile long busy;
+
+		/** Time the worker started */
+		private volatile long started;
+
+		/** Time the worker ended, or 0 if still running */
+		private volatile long ended;
+
+		/**
+		 * Initializes a worker for the pool.
+		 *
+		 * @param pool the pool of this queue
+		 */
+		public Worker(ForkJoinPool pool) {
+			super(pool);
+		}
 
 		@Override
-		public void run() {
-			Runnable r = null;
+		protected void onStart() {
+			super.onStart();
+			started = System.nanoTime();
+			workers.put(getName(), this);
+		}
 
-			while (true) {
-				synchronized (queue) {
-					while (queue.isEmpty() && !shutdown) {
-						try {
-							queue.wait();
-						} catch (InterruptedException ex) {
+		@Override
+		protected void onTermination(Throwable exception) {
+			ended = System.nanoTime();
+			super.onTermination(exception);
+		}
 
-							Thread.currentThread().interrupt();
-						}
-					}
+		/**
+		 * Returns the time the worker has lived, up to when it ended or the queue
+		 * was shutdown.
+		 *
+		 * @return lifetime in nanoseconds, at least 1
+		 */
+		public long getLifetime() {
+			long end = ended;
+			if (shutdownTime != 0 && (end == 0 || shutdownTime < end)) {
+				end = shutdownTime;
+			}
+			if (end == 0) {
+				end = System.nanoTime();
+			}
+			return Math.max(1, end - started);
+		}
+	}
 
-					if (shutdown) {
+	/**
+	 * Runs a work request unless a shutdown was requested, and counts it as done.
+	 * Only work that runs is measured.
+	 */
+	private class Task implements Runnable {
+		/** The work request */
+		private final Runnable r;
+
+		/** Time the work request was added */
+		private final long added;
+
+		/**
+		 * Initializes this task.
+		 *
+		 * @param r work request
+		 */
+		public Task(Runnable r) {
+			this.r = r;
+			this.added = System.nanoTime();
+		}
 
-						break;
-					} else {
-						r = queue.removeFirst();
+		@Override
+		public void run() {
+			if (shutdown) {
+				decrementPending();
+				return;
+			}
+
+			long start = System.nanoTime();
+			waitTimes.record(start - added);
+			running.incrementAndGet();
+			try {
+				r.run();
+				completed.increment();
+			} catch (RuntimeException ex) {
+				// catch runtime exceptions to avoid leaking threads, and keep them to inspect
+				failed.incrementAndGet();
+				synchronized (failures) {
+					if (failures.size() == FAILURES_KEPT) {
+						failures.removeFirst();
 					}
+					failures.addLast(ex);
 				}
-
-				try {
-					r.run();
-				} catch (RuntimeException ex) {
-					// catch runtime exceptions to avoid leaking threads
-					System.err.println("Warning: Work queue encountered an exception while running.");
+			} finally {
+				long ran = System.nanoTime() - start;
+				runTimes.record(ran);
+				Thread current = Thread.currentThread();
+				if (current instanceof Worker) {
+					((Worker) current).busy += ran;
 				}
-
+				running.decrementAndGet();
 				decrementPending();
 			}
 		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,143 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Inverted index that words can be added to, keeping its postings in memory as
+ * {@link PostingList}s. {@link InvertedIndex} keeps them in one map, and
+ * {@link ShardedInvertedIndex} splits them over several.
+ *
+ * @author isaiahjenkins
+ */
+public abstract class WritableIndex extends SearchIndex {
+
+	/**
+	 * Constructor for an index with a location table.
+	 *
+	 * @param locations location IDs and counts
+	 */
+	protected WritableIndex(LocationTableInterface locations) {
+		super(locations);
+	}
+
+	/**
+	 * Helper method to traverse through the directory and its subdirectories to
+	 * retrieve the worded index.
+	 *
+	 * @param word     stemmed word
+	 * @param location current file
+	 * @param position current word position in file
+	 * @throws IOException error for file
+	 */
+	public abstract void add(String word, String location, int position) throws IOException;
+
+	/**
+	 * Add all method to add all the positions and counts to inverted index.
+	 * Postings of the local index are moved rather than copied where possible,
+	 * so the local index must not be used afterwards.
+	 *
+	 * @param localIndex local index when used in multithreaded builder index
+	 */
+	public abstract void addAll(InvertedIndex localIndex);
+
+	/**
+	 * Loads a binary snapshot file and adds it to the index.
+	 *
+	 * @param path the path for the snapshot
+	 * @throws IOException error for file
+	 * @see IndexSnapshot
+	 */
+	public void load(Path path) throws IOException {
+		addAll(InvertedIndex.read(path));
+	}
+
+	/**
+	 * Merges the locations and counts of another index into the location table.
+	 *
+	 * @param localIndex index to merge
+	 * @return our location ID for every location ID of the other index
+	 */
+	protected int[] addLocations(InvertedIndex localIndex) {
+		// merge counts, translating local location IDs into ours
+		int[] remap = new int[localIndex.locations.size()];
+		for (int i = 0; i < remap.length; i++) {
+			remap[i] = locations.add(localIndex.locations.getLocation(i));
+			locations.addCount(remap[i], localIndex.locations.getCount(i));
+		}
+		return remap;
+	}
+
+	/**
+	 * Returns the postings of a word keyed and sorted by location.
+	 *
+	 * @param postings postings of a word
+	 * @return map of locations to positions
+	 */
+	protected TreeMap<String, PositionList> asLocationMap(PostingList postings) {
+		TreeMap<String, PositionList> map = new TreeMap<>();
+		for (PostingList.Cursor cursor = postings.cursor(); cursor.next();) {
+			map.put(locations.getLocation(cursor.id()), cursor.positions());
+		}
+		return map;
+	}
+
+	/**
+	 * Returns a read-only view of postings with locations resolved to strings,
+	 * used to write JSON. Each word is resolved as the view is iterated.
+	 *
+	 * @param postings postings by word, sorted by word
+	 * @return view of the postings by word and location
+	 */
+	protected Map<String, Map<String, PositionList>> asLocationView(Map<String, PostingList> postings) {
+		return new LocationView(postings);
+	}
+
+	/**
+	 * Read-only view of postings with locations resolved to strings.
+	 */
+	private class LocationView extends AbstractMap<String, Map<String, PositionList>> {
+		/** Postings by word, sorted by word */
+		private final Map<String, PostingList> postings;
+
+		/**
+		 * Constructor for a view of postings.
+		 *
+		 * @param postings postings by word, sorted by word
+		 */
+		public LocationView(Map<String, PostingList> postings) {
+			this.postings = postings;
+		}
+
+		@Override
+		public Set<Entry<String, Map<String, PositionList>>> entrySet() {
+			return new AbstractSet<Entry<String, Map<String, PositionList>>>() {
+				@Override
+				public Iterator<Entry<String, Map<String, PositionList>>> iterator() {
+					Iterator<Entry<String, PostingList>> itr = postings.entrySet().iterator();
+					return new Iterator<Entry<String, Map<String, PositionList>>>() {
+						@Override
+						public boolean hasNext() {
+							return itr.hasNext();
+						}
+
+						@Override
+						public Entry<String, Map<String, PositionList>> next() {
+							Entry<String, PostingList> entry = itr.next();
+							return Map.entry(entry.getKey(), asLocationMap(entry.getValue()));
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return postings.size();
+				}
+			};
+		}
+	}
+}